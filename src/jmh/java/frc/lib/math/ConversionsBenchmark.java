@@ -0,0 +1,59 @@
+package frc.lib.math;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import frc.robot.Constants;
+
+/** The Conversions helpers SwerveModule calls every loop, with the real gear ratios. */
+@State(Scope.Thread)
+public class ConversionsBenchmark {
+    private static final int inputCount = 1024;
+
+    private final double[] counts = new double[inputCount];
+    private final double[] values = new double[inputCount];
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < inputCount; i++) {
+            counts[i] = (random.nextDouble() * 2 - 1) * 2048 * 100;
+            values[i] = (random.nextDouble() * 2 - 1) * 360;
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (inputCount - 1);
+        return index;
+    }
+
+    @Benchmark
+    public double falconToDegrees() {
+        return Conversions.falconToDegrees(counts[next()], Constants.Swerve.angleGearRatio);
+    }
+
+    @Benchmark
+    public double degreesToFalcon() {
+        return Conversions.degreesToFalcon(values[next()], Constants.Swerve.angleGearRatio);
+    }
+
+    @Benchmark
+    public double falconToMPS() {
+        return Conversions.falconToMPS(counts[next()], Constants.Swerve.wheelCircumference, Constants.Swerve.driveGearRatio);
+    }
+
+    @Benchmark
+    public double MPSToFalcon() {
+        return Conversions.MPSToFalcon(values[next()], Constants.Swerve.wheelCircumference, Constants.Swerve.driveGearRatio);
+    }
+
+    @Benchmark
+    public double falconToMeters() {
+        return Conversions.falconToMeters(counts[next()], Constants.Swerve.wheelCircumference, Constants.Swerve.driveGearRatio);
+    }
+}
@@ -0,0 +1,71 @@
+package frc.lib.math;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.lib.util.MutableSwerveModuleState;
+import frc.robot.Constants;
+
+/**
+ * Chassis speeds to module states as Swerve.drive() does it, against the WPILib path it replaced.
+ * Inputs cycle through a random table so the JIT can't fold them.
+ */
+@State(Scope.Thread)
+public class KinematicsBenchmark {
+    private static final int inputCount = 1024;
+
+    private final double[] vx = new double[inputCount];
+    private final double[] vy = new double[inputCount];
+    private final double[] omega = new double[inputCount];
+    private final double[] yaw = new double[inputCount];
+    private int index = 0;
+
+    private final SwerveKinematicsBuffer buffer = new SwerveKinematicsBuffer(Constants.Swerve.moduleLocations);
+    private final MutableSwerveModuleState[] states = MutableSwerveModuleState.createArray(4);
+    private final SwerveDriveKinematics kinematics = Constants.Swerve.swerveKinematics;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < inputCount; i++) {
+            vx[i] = (random.nextDouble() * 2 - 1) * Constants.Swerve.maxSpeed;
+            vy[i] = (random.nextDouble() * 2 - 1) * Constants.Swerve.maxSpeed;
+            omega[i] = (random.nextDouble() * 2 - 1) * Constants.Swerve.maxAngularVelocity;
+            yaw[i] = random.nextDouble() * 360;
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (inputCount - 1);
+        return index;
+    }
+
+    @Benchmark
+    public void buffer(Blackhole blackhole) {
+        int i = next();
+        double angle = Math.toRadians(yaw[i]);
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        buffer.toModuleStates(vx[i] * cos + vy[i] * sin, -vx[i] * sin + vy[i] * cos, omega[i], states);
+        SwerveKinematicsBuffer.desaturateWheelSpeeds(states, Constants.Swerve.maxSpeed);
+        blackhole.consume(states);
+    }
+
+    @Benchmark
+    public SwerveModuleState[] wpilib() {
+        int i = next();
+        SwerveModuleState[] moduleStates = kinematics.toSwerveModuleStates(
+            ChassisSpeeds.fromFieldRelativeSpeeds(vx[i], vy[i], omega[i], Rotation2d.fromDegrees(yaw[i])));
+        SwerveDriveKinematics.desaturateWheelSpeeds(moduleStates, Constants.Swerve.maxSpeed);
+        return moduleStates;
+    }
+}
@@ -0,0 +1,65 @@
+package frc.lib.util;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * CTREModuleState.optimize() in place and allocating, and the scope helper on its own. Current
+ * angles include several turns either way since the angle motor position is continuous.
+ */
+@State(Scope.Thread)
+public class ModuleStateBenchmark {
+    private static final int inputCount = 1024;
+
+    private final double[] currentAngles = new double[inputCount];
+    private final double[] targetAngles = new double[inputCount];
+    private final double[] speeds = new double[inputCount];
+    private final Rotation2d[] currentRotations = new Rotation2d[inputCount];
+    private final SwerveModuleState[] targetStates = new SwerveModuleState[inputCount];
+    private final MutableSwerveModuleState state = new MutableSwerveModuleState();
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < inputCount; i++) {
+            currentAngles[i] = (random.nextDouble() * 2 - 1) * 360 * 5;
+            targetAngles[i] = random.nextDouble() * 360 - 180;
+            speeds[i] = random.nextDouble() * 4.5;
+            currentRotations[i] = Rotation2d.fromDegrees(currentAngles[i]);
+            targetStates[i] = new SwerveModuleState(speeds[i], Rotation2d.fromDegrees(targetAngles[i]));
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (inputCount - 1);
+        return index;
+    }
+
+    @Benchmark
+    public double placeInScope() {
+        int i = next();
+        return CTREModuleState.placeInAppropriate0To360Scope(currentAngles[i], targetAngles[i]);
+    }
+
+    @Benchmark
+    public MutableSwerveModuleState optimizeInPlace() {
+        int i = next();
+        state.set(speeds[i], targetAngles[i]);
+        CTREModuleState.optimize(state, currentAngles[i]);
+        return state;
+    }
+
+    @Benchmark
+    public SwerveModuleState optimizeAllocating() {
+        int i = next();
+        return CTREModuleState.optimize(targetStates[i], currentRotations[i]);
+    }
+}
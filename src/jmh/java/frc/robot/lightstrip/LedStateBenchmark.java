@@ -0,0 +1,25 @@
+package frc.robot.lightstrip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import frc.robot.Constants.lightstripConstants;
+
+/** LedState.compare() as Lightstrip.periodic() uses it, for a matching and a different color. */
+@State(Scope.Thread)
+public class LedStateBenchmark {
+    private final LedState current = lightstripConstants.coneIntake;
+    private final LedState same = new LedState(current.getRed(), current.getGreen(), current.getBlue(), current.getEffect());
+    private final LedState different = lightstripConstants.cubeIntake;
+
+    @Benchmark
+    public boolean compareSame() {
+        return current.compare(same);
+    }
+
+    @Benchmark
+    public boolean compareDifferent() {
+        return current.compare(different);
+    }
+}
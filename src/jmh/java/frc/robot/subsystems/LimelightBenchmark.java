@@ -0,0 +1,38 @@
+package frc.robot.subsystems;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+/** The conversion behind Limelight.CamtoTarget(), without NetworkTables. */
+@State(Scope.Thread)
+public class LimelightBenchmark {
+    private static final int inputCount = 1024;
+
+    private final double[][] targetPoses = new double[inputCount][6];
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (double[] t : targetPoses) {
+            t[0] = random.nextDouble() * 2 - 1;
+            t[1] = random.nextDouble() * 0.5;
+            t[2] = random.nextDouble() * 4;
+            t[3] = random.nextDouble() * 30 - 15;
+            t[4] = random.nextDouble() * 90 - 45;
+            t[5] = random.nextDouble() * 30 - 15;
+        }
+    }
+
+    @Benchmark
+    public Transform3d camToTarget() {
+        index = (index + 1) & (inputCount - 1);
+        return Limelight.toTransform(targetPoses[index]);
+    }
+}
@@ -0,0 +1,165 @@
+package frc.lib.math;
+
+import java.util.Arrays;
+
+/**
+ * Ordinary least squares fit of V = kS*sign(v) + kG*g(x) + kV*v + kA*a, the same model SysId fits.
+ * Samples are folded into the normal equations as they arrive, so adding one allocates nothing and
+ * the fit works on any number of samples. g(x) is the gravity basis: 1 for an elevator, cos(x) for
+ * an arm, and the kG column is left out for a mechanism without gravity.
+ */
+public class FeedforwardFit {
+    private static final int S = 0;
+    private static final int G = 1;
+    private static final int V = 2;
+    private static final int A = 3;
+
+    private final boolean fitGravity;
+    /* Normal equations, X^T X and X^T y, over the four columns */
+    private final double[][] xtx = new double[4][4];
+    private final double[] xty = new double[4];
+    private final double[] row = new double[4];
+    private double sumY = 0.0;
+    private double sumYSquared = 0.0;
+    private int samples = 0;
+
+    /* Results of the last solve() */
+    private double kS = 0.0;
+    private double kG = 0.0;
+    private double kV = 0.0;
+    private double kA = 0.0;
+    private double rSquared = 0.0;
+
+    /** @param fitGravity false for a mechanism gravity doesn't act on, such as a drivetrain */
+    public FeedforwardFit(boolean fitGravity) {
+        this.fitGravity = fitGravity;
+    }
+
+    /**
+     * @param volts Applied voltage
+     * @param gravity Gravity basis g(x) at the sample
+     * @param velocity Units per second
+     * @param acceleration Units per second squared
+     */
+    public void addSample(double volts, double gravity, double velocity, double acceleration) {
+        row[S] = Math.signum(velocity);
+        row[G] = fitGravity ? gravity : 0.0;
+        row[V] = velocity;
+        row[A] = acceleration;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                xtx[i][j] += row[i] * row[j];
+            }
+            xty[i] += row[i] * volts;
+        }
+        sumY += volts;
+        sumYSquared += volts * volts;
+        samples++;
+    }
+
+    public int getSampleCount() {
+        return samples;
+    }
+
+    public void reset() {
+        for (int i = 0; i < 4; i++) {
+            Arrays.fill(xtx[i], 0.0);
+        }
+        Arrays.fill(xty, 0.0);
+        sumY = 0.0;
+        sumYSquared = 0.0;
+        samples = 0;
+    }
+
+    /**
+     * Solves the normal equations for the gains.
+     * @return false if the samples don't determine every gain, e.g. a test never ran
+     */
+    public boolean solve() {
+        int[] columns = fitGravity ? new int[] {S, G, V, A} : new int[] {S, V, A};
+        int n = columns.length;
+        if (samples <= n) {
+            return false;
+        }
+
+        /* Gaussian elimination with partial pivoting on the augmented system */
+        double[][] m = new double[n][n + 1];
+        double scale = 0.0;
+        for (int i = 0; i < n; i++) {
+            scale = Math.max(scale, xtx[columns[i]][columns[i]]);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                m[i][j] = xtx[columns[i]][columns[j]];
+            }
+            m[i][n] = xty[columns[i]];
+        }
+        for (int pivot = 0; pivot < n; pivot++) {
+            int best = pivot;
+            for (int i = pivot + 1; i < n; i++) {
+                if (Math.abs(m[i][pivot]) > Math.abs(m[best][pivot])) {
+                    best = i;
+                }
+            }
+            /* A column the tests never excited, the gains can't be told apart */
+            if (Math.abs(m[best][pivot]) <= 1e-12 * scale) {
+                return false;
+            }
+            double[] swap = m[pivot];
+            m[pivot] = m[best];
+            m[best] = swap;
+            for (int i = pivot + 1; i < n; i++) {
+                double factor = m[i][pivot] / m[pivot][pivot];
+                for (int j = pivot; j <= n; j++) {
+                    m[i][j] -= factor * m[pivot][j];
+                }
+            }
+        }
+        double[] gains = new double[4];
+        for (int i = n - 1; i >= 0; i--) {
+            double value = m[i][n];
+            for (int j = i + 1; j < n; j++) {
+                value -= m[i][j] * gains[columns[j]];
+            }
+            gains[columns[i]] = value / m[i][i];
+        }
+
+        /* Residual sum of squares from the normal equations: y'y - 2 b'X'y + b'X'X b */
+        double residual = sumYSquared;
+        for (int i = 0; i < 4; i++) {
+            residual -= 2.0 * gains[i] * xty[i];
+            for (int j = 0; j < 4; j++) {
+                residual += gains[i] * xtx[i][j] * gains[j];
+            }
+        }
+        double total = sumYSquared - sumY * sumY / samples;
+
+        kS = gains[S];
+        kG = gains[G];
+        kV = gains[V];
+        kA = gains[A];
+        rSquared = total > 0.0 ? 1.0 - residual / total : 0.0;
+        return Double.isFinite(kS) && Double.isFinite(kG) && Double.isFinite(kV) && Double.isFinite(kA);
+    }
+
+    public double getKS() {
+        return kS;
+    }
+
+    public double getKG() {
+        return kG;
+    }
+
+    public double getKV() {
+        return kV;
+    }
+
+    public double getKA() {
+        return kA;
+    }
+
+    /** @return Fraction of the voltage variance the fit explains */
+    public double getRSquared() {
+        return rSquared;
+    }
+}
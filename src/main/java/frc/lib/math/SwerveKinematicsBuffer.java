@@ -0,0 +1,169 @@
+package frc.lib.math;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.lib.util.MutableSwerveModuleState;
+
+/**
+ * Primitive version of SwerveDriveKinematics.toSwerveModuleStates() and desaturateWheelSpeeds()
+ * that writes into caller owned states instead of allocating new ones every loop.
+ */
+public class SwerveKinematicsBuffer {
+    private final double[] moduleX;
+    private final double[] moduleY;
+    /* Module locations relative to their centroid, for forward kinematics */
+    private final double centroidX;
+    private final double centroidY;
+    private final double sumSquaredRadius;
+
+    /**
+     * @param moduleLocations Module locations relative to robot center, same order as SwerveDriveKinematics
+     */
+    public SwerveKinematicsBuffer(Translation2d... moduleLocations) {
+        moduleX = new double[moduleLocations.length];
+        moduleY = new double[moduleLocations.length];
+        for (int i = 0; i < moduleLocations.length; i++) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+        }
+
+        double sumX = 0.0;
+        double sumY = 0.0;
+        for (int i = 0; i < moduleX.length; i++) {
+            sumX += moduleX[i];
+            sumY += moduleY[i];
+        }
+        centroidX = sumX / moduleX.length;
+        centroidY = sumY / moduleX.length;
+        double sumSquared = 0.0;
+        for (int i = 0; i < moduleX.length; i++) {
+            double dx = moduleX[i] - centroidX;
+            double dy = moduleY[i] - centroidY;
+            sumSquared += dx * dx + dy * dy;
+        }
+        sumSquaredRadius = sumSquared;
+    }
+
+    public int getNumModules() {
+        return moduleX.length;
+    }
+
+    public double getModuleX(int moduleNumber) {
+        return moduleX[moduleNumber];
+    }
+
+    public double getModuleY(int moduleNumber) {
+        return moduleY[moduleNumber];
+    }
+
+    /**
+     * @param vx Robot relative forward velocity, meters per second
+     * @param vy Robot relative left velocity, meters per second
+     * @param omega Counter clockwise angular velocity, radians per second
+     * @param out States to write, one per module
+     */
+    public void toModuleStates(double vx, double vy, double omega, MutableSwerveModuleState[] out) {
+        if (vx == 0.0 && vy == 0.0 && omega == 0.0) {
+            /* Keep the previous angles like WPILib does, only zero the speeds */
+            for (int i = 0; i < moduleX.length; i++) {
+                out[i].speedMetersPerSecond = 0.0;
+                out[i].steerRateRadiansPerSecond = 0.0;
+            }
+            return;
+        }
+
+        for (int i = 0; i < moduleX.length; i++) {
+            double x = vx - omega * moduleY[i];
+            double y = vy + omega * moduleX[i];
+            out[i].speedMetersPerSecond = Math.hypot(x, y);
+            out[i].angleDegrees = Math.toDegrees(Math.atan2(y, x));
+            out[i].steerRateRadiansPerSecond = 0.0;
+        }
+    }
+
+    /**
+     * Second order version of toModuleStates(). The speeds are first discretized over the loop period:
+     * they are replaced by the constant speeds whose twist ends the period where the commanded speeds
+     * would have, as if they had been held while the robot rotated, so translating while rotating
+     * doesn't skew. Each module also gets the steering rate that keeps it pointed along its velocity
+     * while the robot rotates under a field fixed velocity.
+     *
+     * @param vx Robot relative forward velocity, meters per second
+     * @param vy Robot relative left velocity, meters per second
+     * @param omega Counter clockwise angular velocity, radians per second
+     * @param dtSeconds Loop period the speeds are held for
+     * @param out States to write, one per module
+     */
+    public void toModuleStatesSecondOrder(double vx, double vy, double omega, double dtSeconds, MutableSwerveModuleState[] out) {
+        /* Pose2d.log() of the pose reached by holding the speeds, in primitives */
+        double dtheta = omega * dtSeconds;
+        double halfDtheta = dtheta / 2.0;
+        double cosMinusOne = Math.cos(dtheta) - 1.0;
+        double halfThetaByTanOfHalfDtheta;
+        if (Math.abs(cosMinusOne) < 1e-9) {
+            halfThetaByTanOfHalfDtheta = 1.0 - dtheta * dtheta / 12.0;
+        } else {
+            halfThetaByTanOfHalfDtheta = -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+        }
+        double discreteVx = vx * halfThetaByTanOfHalfDtheta + vy * halfDtheta;
+        double discreteVy = -vx * halfDtheta + vy * halfThetaByTanOfHalfDtheta;
+
+        toModuleStates(discreteVx, discreteVy, omega, out);
+        if (omega == 0.0) {
+            return;
+        }
+
+        for (int i = 0; i < moduleX.length; i++) {
+            double x = discreteVx - omega * moduleY[i];
+            double y = discreteVy + omega * moduleX[i];
+            double speedSquared = x * x + y * y;
+            /* The robot relative velocity turns at -omega, the module has to follow it */
+            out[i].steerRateRadiansPerSecond = speedSquared < 1e-9 ? 0.0 : -omega * (x * discreteVx + y * discreteVy) / speedSquared;
+        }
+    }
+
+    /**
+     * Least squares chassis speeds from module states, the inverse of toModuleStates().
+     * @param states One per module
+     * @param out Written with vx, vy in meters per second and omega in radians per second
+     */
+    public void toChassisSpeeds(MutableSwerveModuleState[] states, double[] out) {
+        double meanX = 0.0;
+        double meanY = 0.0;
+        double omegaSum = 0.0;
+        for (int i = 0; i < moduleX.length; i++) {
+            double angle = Math.toRadians(states[i].angleDegrees);
+            double x = states[i].speedMetersPerSecond * Math.cos(angle);
+            double y = states[i].speedMetersPerSecond * Math.sin(angle);
+            meanX += x;
+            meanY += y;
+            omegaSum += (moduleX[i] - centroidX) * y - (moduleY[i] - centroidY) * x;
+        }
+        meanX /= moduleX.length;
+        meanY /= moduleX.length;
+        double omega = sumSquaredRadius == 0.0 ? 0.0 : omegaSum / sumSquaredRadius;
+
+        out[0] = meanX + omega * centroidY;
+        out[1] = meanY - omega * centroidX;
+        out[2] = omega;
+    }
+
+    /**
+     * Scales every module down by the same factor if any of them exceed the max speed.
+     * @param states States to desaturate in place
+     * @param maxSpeed Meters per second
+     */
+    public static void desaturateWheelSpeeds(MutableSwerveModuleState[] states, double maxSpeed) {
+        double realMaxSpeed = 0.0;
+        for (MutableSwerveModuleState state : states) {
+            realMaxSpeed = Math.max(realMaxSpeed, Math.abs(state.speedMetersPerSecond));
+        }
+        if (realMaxSpeed > maxSpeed) {
+            double scale = maxSpeed / realMaxSpeed;
+            for (MutableSwerveModuleState state : states) {
+                state.speedMetersPerSecond *= scale;
+                /* Scaling every module scales the chassis speeds, and the steering rates with them */
+                state.steerRateRadiansPerSecond *= scale;
+            }
+        }
+    }
+}
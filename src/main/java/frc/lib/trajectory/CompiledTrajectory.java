@@ -0,0 +1,395 @@
+package frc.lib.trajectory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.EventMarker;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * PathPlanner trajectory generated at build time and stored as a flat array of states.
+ * The file is memory mapped and sampled in place, so sampling allocates nothing.
+ *
+ * File layout, big endian:
+ * header {int magic, int version, int stateCount, int markerCount},
+ * stateCount states of stateDoubles doubles,
+ * markerCount markers {double time, double x, double y, int nameCount, nameCount UTF-8 strings (int length, bytes)}.
+ */
+public class CompiledTrajectory {
+    public static final int magic = 0x46524354; // "FRCT"
+    public static final int version = 1;
+    public static final String extension = ".traj";
+    /* Same field width PathPlanner mirrors red alliance paths across */
+    public static final double fieldWidthMeters = 8.02;
+
+    private static final int headerBytes = 4 * Integer.BYTES;
+    private static final int stateDoubles = 10;
+    private static final int stateBytes = stateDoubles * Double.BYTES;
+
+    /* Offsets within a state, in doubles */
+    private static final int TIME = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int HEADING = 3;
+    private static final int VELOCITY = 4;
+    private static final int ACCELERATION = 5;
+    private static final int CURVATURE = 6;
+    private static final int ANGULAR_VELOCITY = 7;
+    private static final int HOLONOMIC = 8;
+    private static final int HOLONOMIC_VELOCITY = 9;
+
+    private final ByteBuffer buffer;
+    private final int stateCount;
+    private final List<Marker> markers;
+    private final boolean mirrored;
+
+    /** Mutable trajectory state, filled in by sample() so callers can reuse one instance. */
+    public static class State {
+        public double timeSeconds;
+        public double xMeters;
+        public double yMeters;
+        public double headingRadians;
+        public double velocityMetersPerSecond;
+        public double accelerationMetersPerSecondSq;
+        public double curvatureRadPerMeter;
+        public double angularVelocityRadPerSec;
+        public double holonomicRadians;
+        public double holonomicAngularVelocityRadPerSec;
+    }
+
+    /** Event marker, names in the order they were listed in PathPlanner. */
+    public static class Marker {
+        public final List<String> names;
+        public final double timeSeconds;
+        public final Translation2d positionMeters;
+
+        public Marker(List<String> names, double timeSeconds, Translation2d positionMeters) {
+            this.names = names;
+            this.timeSeconds = timeSeconds;
+            this.positionMeters = positionMeters;
+        }
+    }
+
+    private CompiledTrajectory(ByteBuffer buffer, int stateCount, List<Marker> markers, boolean mirrored) {
+        this.buffer = buffer;
+        this.stateCount = stateCount;
+        this.markers = markers;
+        this.mirrored = mirrored;
+    }
+
+    /**
+     * Memory maps a compiled trajectory file.
+     * @throws IOException if the file can't be read or is not a compiled trajectory of this version
+     */
+    public static CompiledTrajectory load(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return fromBuffer(buffer, file.toString());
+    }
+
+    /**
+     * Copies a generated trajectory into the same flat layout on the heap, so it can be followed
+     * with the same allocation-free sampling. Done once per path, not per loop.
+     */
+    public static CompiledTrajectory fromTrajectory(PathPlannerTrajectory trajectory) {
+        try {
+            return fromBuffer(toBuffer(trajectory), "generated trajectory");
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private static CompiledTrajectory fromBuffer(ByteBuffer buffer, String source) throws IOException {
+        if (buffer.getInt(0) != magic || buffer.getInt(4) != version) {
+            throw new IOException(source + " is not a version " + version + " compiled trajectory");
+        }
+        int stateCount = buffer.getInt(8);
+        int markerCount = buffer.getInt(12);
+        if (stateCount < 1) {
+            throw new IOException(source + " has no states");
+        }
+
+        buffer.position(headerBytes + stateCount * stateBytes);
+        List<Marker> markers = new ArrayList<>(markerCount);
+        for (int i = 0; i < markerCount; i++) {
+            double time = buffer.getDouble();
+            Translation2d position = new Translation2d(buffer.getDouble(), buffer.getDouble());
+            int nameCount = buffer.getInt();
+            List<String> names = new ArrayList<>(nameCount);
+            for (int n = 0; n < nameCount; n++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                names.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            markers.add(new Marker(Collections.unmodifiableList(names), time, position));
+        }
+        return new CompiledTrajectory(buffer, stateCount, Collections.unmodifiableList(markers), false);
+    }
+
+    /** Serializes a generated trajectory, run by the build. */
+    public static void write(PathPlannerTrajectory trajectory, Path file) throws IOException {
+        ByteBuffer buffer = toBuffer(trajectory);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static ByteBuffer toBuffer(PathPlannerTrajectory trajectory) {
+        List<EventMarker> eventMarkers = trajectory.getMarkers();
+        List<byte[][]> markerNames = new ArrayList<>();
+        int markerBytes = 0;
+        for (EventMarker marker : eventMarkers) {
+            byte[][] names = new byte[marker.names.size()][];
+            markerBytes += 3 * Double.BYTES + Integer.BYTES;
+            for (int n = 0; n < names.length; n++) {
+                names[n] = marker.names.get(n).getBytes(StandardCharsets.UTF_8);
+                markerBytes += Integer.BYTES + names[n].length;
+            }
+            markerNames.add(names);
+        }
+
+        int stateCount = trajectory.getStates().size();
+        ByteBuffer buffer = ByteBuffer.allocate(headerBytes + stateCount * stateBytes + markerBytes);
+        buffer.putInt(magic).putInt(version).putInt(stateCount).putInt(eventMarkers.size());
+        for (int i = 0; i < stateCount; i++) {
+            PathPlannerState state = trajectory.getState(i);
+            buffer.putDouble(state.timeSeconds)
+                .putDouble(state.poseMeters.getX())
+                .putDouble(state.poseMeters.getY())
+                .putDouble(state.poseMeters.getRotation().getRadians())
+                .putDouble(state.velocityMetersPerSecond)
+                .putDouble(state.accelerationMetersPerSecondSq)
+                .putDouble(state.curvatureRadPerMeter)
+                .putDouble(state.angularVelocityRadPerSec)
+                .putDouble(state.holonomicRotation.getRadians())
+                .putDouble(state.holonomicAngularVelocityRadPerSec);
+        }
+        for (int i = 0; i < eventMarkers.size(); i++) {
+            EventMarker marker = eventMarkers.get(i);
+            buffer.putDouble(marker.timeSeconds)
+                .putDouble(marker.positionMeters.getX())
+                .putDouble(marker.positionMeters.getY())
+                .putInt(markerNames.get(i).length);
+            for (byte[] name : markerNames.get(i)) {
+                buffer.putInt(name.length).put(name);
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return View of this trajectory mirrored for the red alliance the same way
+     *         PathPlannerTrajectory.transformTrajectoryForAlliance() does, sharing the mapped file
+     */
+    public CompiledTrajectory mirrored() {
+        List<Marker> mirroredMarkers = new ArrayList<>(markers.size());
+        for (Marker marker : markers) {
+            mirroredMarkers.add(new Marker(marker.names, marker.timeSeconds,
+                new Translation2d(marker.positionMeters.getX(), fieldWidthMeters - marker.positionMeters.getY())));
+        }
+        return new CompiledTrajectory(buffer, stateCount, Collections.unmodifiableList(mirroredMarkers), !mirrored);
+    }
+
+    public boolean isMirrored() {
+        return mirrored;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public double getTotalTimeSeconds() {
+        return get(stateCount - 1, TIME);
+    }
+
+    public List<Marker> getMarkers() {
+        return markers;
+    }
+
+    public double getStateTime(int index) {
+        return get(index, TIME);
+    }
+
+    private double get(int index, int field) {
+        return buffer.getDouble(headerBytes + index * stateBytes + field * Double.BYTES);
+    }
+
+    /** Copies one stored state, mirrored if this is a red alliance view. */
+    public State getState(int index, State out) {
+        out.timeSeconds = get(index, TIME);
+        out.xMeters = get(index, X);
+        out.velocityMetersPerSecond = get(index, VELOCITY);
+        out.accelerationMetersPerSecondSq = get(index, ACCELERATION);
+        double y = get(index, Y);
+        double heading = get(index, HEADING);
+        double curvature = get(index, CURVATURE);
+        double angularVelocity = get(index, ANGULAR_VELOCITY);
+        double holonomic = get(index, HOLONOMIC);
+        double holonomicVelocity = get(index, HOLONOMIC_VELOCITY);
+        if (mirrored) {
+            out.yMeters = fieldWidthMeters - y;
+            out.headingRadians = -heading;
+            out.curvatureRadPerMeter = -curvature;
+            out.angularVelocityRadPerSec = -angularVelocity;
+            out.holonomicRadians = -holonomic;
+            out.holonomicAngularVelocityRadPerSec = -holonomicVelocity;
+        } else {
+            out.yMeters = y;
+            out.headingRadians = heading;
+            out.curvatureRadPerMeter = curvature;
+            out.angularVelocityRadPerSec = angularVelocity;
+            out.holonomicRadians = holonomic;
+            out.holonomicAngularVelocityRadPerSec = holonomicVelocity;
+        }
+        return out;
+    }
+
+    /**
+     * @return Index of the first state at or after the time, clamped to the last state
+     */
+    public int indexAt(double timeSeconds) {
+        int low = 1;
+        int high = stateCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid, TIME) < timeSeconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Same lookup and linear interpolation as PathPlannerTrajectory.sample(), into a caller owned state.
+     * @return out
+     */
+    public State sample(double timeSeconds, State out) {
+        if (timeSeconds <= get(0, TIME) || stateCount == 1) {
+            return getState(0, out);
+        }
+        if (timeSeconds >= getTotalTimeSeconds()) {
+            return getState(stateCount - 1, out);
+        }
+        return interpolate(indexAt(timeSeconds), timeSeconds, out);
+    }
+
+    /**
+     * Interpolates between state index - 1 and index.
+     * @return out
+     */
+    public State interpolate(int index, double timeSeconds, State out) {
+        double startTime = get(index - 1, TIME);
+        double endTime = get(index, TIME);
+        double t = endTime > startTime ? (timeSeconds - startTime) / (endTime - startTime) : 1.0;
+        double sign = mirrored ? -1.0 : 1.0;
+
+        out.timeSeconds = timeSeconds;
+        out.xMeters = lerp(index, X, t);
+        out.yMeters = mirrored ? fieldWidthMeters - lerp(index, Y, t) : lerp(index, Y, t);
+        out.headingRadians = sign * lerpAngle(index, HEADING, t);
+        out.velocityMetersPerSecond = lerp(index, VELOCITY, t);
+        out.accelerationMetersPerSecondSq = lerp(index, ACCELERATION, t);
+        out.curvatureRadPerMeter = sign * lerp(index, CURVATURE, t);
+        out.angularVelocityRadPerSec = sign * lerp(index, ANGULAR_VELOCITY, t);
+        out.holonomicRadians = sign * lerpAngle(index, HOLONOMIC, t);
+        out.holonomicAngularVelocityRadPerSec = sign * lerp(index, HOLONOMIC_VELOCITY, t);
+        return out;
+    }
+
+    private double lerp(int index, int field, double t) {
+        double start = get(index - 1, field);
+        return start + (get(index, field) - start) * t;
+    }
+
+    private double lerpAngle(int index, int field, double t) {
+        double start = get(index - 1, field);
+        return MathUtil.angleModulus(start + MathUtil.angleModulus(get(index, field) - start) * t);
+    }
+
+    /** @return New cursor at the start of the trajectory */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Remembers where the last sample was found. Time only moves forward while following, so the next
+     * sample is found by stepping from there, amortized O(1) instead of a binary search every loop.
+     */
+    public class Cursor {
+        private int index = 1;
+
+        /**
+         * Same result as CompiledTrajectory.sample(), falls back to a binary search if time went backwards.
+         * @return out
+         */
+        public State sample(double timeSeconds, State out) {
+            if (timeSeconds <= getStateTime(0) || stateCount == 1) {
+                index = 1;
+                return getState(0, out);
+            }
+            if (timeSeconds >= getTotalTimeSeconds()) {
+                index = stateCount - 1;
+                return getState(stateCount - 1, out);
+            }
+            if (getStateTime(index - 1) > timeSeconds) {
+                index = indexAt(timeSeconds);
+            }
+            while (getStateTime(index) < timeSeconds) {
+                index++;
+            }
+            return interpolate(index, timeSeconds, out);
+        }
+
+        public void reset() {
+            index = 1;
+        }
+
+        /** @return Index of the state the last sample ended at */
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    /** @return Starting pose with the holonomic rotation, allocates */
+    public Pose2d getInitialHolonomicPose() {
+        State start = getState(0, new State());
+        return new Pose2d(start.xMeters, start.yMeters, new Rotation2d(start.holonomicRadians));
+    }
+
+    /** @return Sample as a PathPlannerState for code that needs one, allocates */
+    public PathPlannerState sample(double timeSeconds) {
+        State sample = sample(timeSeconds, new State());
+        PathPlannerState state = new PathPlannerState();
+        state.timeSeconds = sample.timeSeconds;
+        state.velocityMetersPerSecond = sample.velocityMetersPerSecond;
+        state.accelerationMetersPerSecondSq = sample.accelerationMetersPerSecondSq;
+        state.poseMeters = new Pose2d(sample.xMeters, sample.yMeters, new Rotation2d(sample.headingRadians));
+        state.curvatureRadPerMeter = sample.curvatureRadPerMeter;
+        state.angularVelocityRadPerSec = sample.angularVelocityRadPerSec;
+        state.holonomicRotation = new Rotation2d(sample.holonomicRadians);
+        state.holonomicAngularVelocityRadPerSec = sample.holonomicAngularVelocityRadPerSec;
+        return state;
+    }
+}
@@ -25,26 +25,62 @@ public class CTREModuleState {
   }
 
   /**
+   * Same as {@link #optimize(SwerveModuleState, Rotation2d)}, but rewrites the state in place.
+   *
+   * @param state The desired state, overwritten with the optimized state.
+   * @param currentAngleDegrees The current module angle in degrees.
+   */
+  public static void optimize(MutableSwerveModuleState state, double currentAngleDegrees) {
+    double targetAngle = placeInAppropriate0To360Scope(currentAngleDegrees, state.angleDegrees);
+    double targetSpeed = state.speedMetersPerSecond;
+    double delta = targetAngle - currentAngleDegrees;
+    if (Math.abs(delta) > 90){
+        targetSpeed = -targetSpeed;
+        targetAngle = delta > 90 ? (targetAngle -= 180) : (targetAngle += 180);
+    }
+    state.set(targetSpeed, targetAngle);
+  }
+
+  /**
+   * Same as {@link #optimize(MutableSwerveModuleState, double)}, optionally scaling the speed by the
+   * cosine of the remaining angle error so the wheel doesn't push sideways while it turns.
+   *
+   * @param state The desired state, overwritten with the optimized state.
+   * @param currentAngleDegrees The current module angle in degrees.
+   * @param cosineScale Whether to scale the speed by the angle error.
+   */
+  public static void optimize(MutableSwerveModuleState state, double currentAngleDegrees, boolean cosineScale) {
+    optimize(state, currentAngleDegrees);
+    if (cosineScale) {
+      /* At most 90 degrees off after optimizing, so this never flips the direction */
+      state.speedMetersPerSecond *= Math.cos(Math.toRadians(state.angleDegrees - currentAngleDegrees));
+    }
+  }
+
+  /**
+     * Same result as stepping 360 degrees at a time, bit for bit, without stepping through every
+     * turn. Between the points where adding 360 can round, the additions are exact, so those turns
+     * are jumped over in one multiply. Only the few steps that can round, near zero and where the
+     * angle crosses a power of two, are taken one at a time, so the cost depends on the number of
+     * binades crossed rather than on the number of turns. The final +-180 tie decision then sees the
+     * same value the loops produced.
+     *
      * @param scopeReference Current Angle
      * @param newAngle Target Angle
      * @return Closest angle within scope
      */
-    private static double placeInAppropriate0To360Scope(double scopeReference, double newAngle) {
-      double lowerBound;
-      double upperBound;
+    public static double placeInAppropriate0To360Scope(double scopeReference, double newAngle) {
       double lowerOffset = scopeReference % 360;
-      if (lowerOffset >= 0) {
-          lowerBound = scopeReference - lowerOffset;
-          upperBound = scopeReference + (360 - lowerOffset);
-      } else {
-          upperBound = scopeReference - lowerOffset;
-          lowerBound = scopeReference - (360 + lowerOffset);
-      }
-      while (newAngle < lowerBound) {
-          newAngle += 360;
-      }
-      while (newAngle > upperBound) {
-          newAngle -= 360;
+      double lowerBound = lowerOffset >= 0 ? scopeReference - lowerOffset : scopeReference - (360 + lowerOffset);
+      double upperBound = lowerOffset >= 0 ? scopeReference + (360 - lowerOffset) : scopeReference - lowerOffset;
+
+      newAngle = turnUpTo(newAngle, lowerBound);
+      if (newAngle > upperBound) {
+          /* Subtracting 360 mirrors adding it to the negated angle, except that x - x is +0 */
+          newAngle = -turnUpTo(-newAngle, -upperBound);
+          if (newAngle == 0) {
+              newAngle = 0.0;
+          }
       }
       if (newAngle - scopeReference > 180) {
           newAngle -= 360;
@@ -53,4 +89,53 @@ public class CTREModuleState {
       }
       return newAngle;
   }
+
+  /* Result of while (angle < bound) angle += 360 */
+  private static double turnUpTo(double angle, double bound) {
+      while (angle < bound) {
+          long exact = exactTurnsUp(angle);
+          if (exact == 0) {
+              angle += 360;
+              continue;
+          }
+          /* Stop at the turn where the loop would have, an estimate that is short just goes around again */
+          long turns = Math.min(exact, Math.max(1, (long) Math.ceil((bound - angle) / 360)));
+          while (turns > 1 && angle + 360.0 * (turns - 1) >= bound) {
+              turns--;
+          }
+          angle += 360.0 * turns;
+      }
+      return angle;
+  }
+
+  /* Number of times 360 can be added to the angle with every sum exact */
+  private static long exactTurnsUp(double angle) {
+      if (angle < 0) {
+          /* Shrinking toward zero is exact while 360 is a multiple of the ulp, until the sign flips */
+          if (angle < -0x1p55) {
+              return 0;
+          }
+          long turns = (long) (-angle / 360);
+          while (turns > 0 && angle + 360.0 * turns > 0) {
+              turns--;
+          }
+          while (angle + 360.0 * (turns + 1) <= 0) {
+              turns++;
+          }
+          return turns;
+      }
+      /* Growing is exact while the sum stays in the angle's binade, below 256 the ulp is finer than 360's */
+      if (angle < 0x1p8 || angle >= 0x1p55) {
+          return 0;
+      }
+      double top = 2 * Math.scalb(1.0, Math.getExponent(angle));
+      long turns = (long) ((top - angle) / 360);
+      while (turns > 0 && angle + 360.0 * turns >= top) {
+          turns--;
+      }
+      while (angle + 360.0 * (turns + 1) < top) {
+          turns++;
+      }
+      return turns;
+  }
 }
@@ -0,0 +1,133 @@
+package frc.lib.util;
+
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.can.BaseTalon;
+
+/**
+ * Runs a trapezoidal or S-curve profile on a Talon's own 1 kHz Motion Magic loop instead of a
+ * ProfiledPIDController on the RIO. Gains are given in robot units and volts, the same as the RIO
+ * side controllers use, and converted to Talon units here. Slot 0 holds the gains for moving in the
+ * positive direction and slot 1 for the negative direction, and the slot is picked per goal.
+ *
+ * The Talon's voltage compensation is enabled so kF means the same thing at any battery voltage.
+ */
+public class MotionMagicController {
+    /* Talon output units at full output */
+    private static final double fullOutput = 1023.0;
+
+    private final BaseTalon motor;
+    private final double positionPerTick;
+    /* Robot units per second per (tick per 100 ms) */
+    private final double velocityPerTick;
+    private final double nominalVoltage;
+
+    private double goal = 0.0;
+    private int slot = 0;
+
+    /**
+     * @param motor Talon with its selected sensor already configured
+     * @param positionConversionFactor Robot units per sensor tick
+     * @param nominalVoltage Voltage compensation saturation, volts
+     */
+    public MotionMagicController(BaseTalon motor, double positionConversionFactor, double nominalVoltage) {
+        this.motor = motor;
+        this.positionPerTick = positionConversionFactor;
+        this.velocityPerTick = positionConversionFactor * 10.0;
+        this.nominalVoltage = nominalVoltage;
+    }
+
+    /** Gains for one direction, in volts and robot units */
+    public static final class Gains {
+        public final double kP;
+        public final double kD;
+        public final double kV;
+
+        /**
+         * @param kP Volts per unit of error
+         * @param kD Volts per unit per second of error
+         * @param kV Volts per unit per second
+         */
+        public Gains(double kP, double kD, double kV) {
+            this.kP = kP;
+            this.kD = kD;
+            this.kV = kV;
+        }
+    }
+
+    /**
+     * Writes the gains, profile and voltage compensation to the Talon. Blocking, run it from device startup
+     * after the factory default.
+     * @param cruiseVelocity Units per second
+     * @param acceleration Units per second squared
+     * @param sCurveStrength 0 for a trapezoid, up to 8 for the smoothest S-curve
+     * @return First error reported by the device, or OK
+     */
+    public ErrorCode configure(Gains positive, Gains negative, double cruiseVelocity, double acceleration, int sCurveStrength, int timeoutMs) {
+        ErrorCode[] errors = {
+            motor.configVoltageCompSaturation(nominalVoltage, timeoutMs),
+            configureSlot(0, positive, timeoutMs),
+            configureSlot(1, negative, timeoutMs),
+            motor.configMotionCruiseVelocity(cruiseVelocity / velocityPerTick, timeoutMs),
+            motor.configMotionAcceleration(acceleration / velocityPerTick, timeoutMs),
+            motor.configMotionSCurveStrength(sCurveStrength, timeoutMs)
+        };
+        motor.enableVoltageCompensation(true);
+        for (ErrorCode error : errors) {
+            if (error != ErrorCode.OK) {
+                return error;
+            }
+        }
+        return ErrorCode.OK;
+    }
+
+    private ErrorCode configureSlot(int slot, Gains gains, int timeoutMs) {
+        double outputPerVolt = fullOutput / nominalVoltage;
+        ErrorCode error = motor.config_kP(slot, gains.kP * positionPerTick * outputPerVolt, timeoutMs);
+        if (error == ErrorCode.OK) {
+            /* The Talon's derivative is per 1 ms loop */
+            error = motor.config_kD(slot, gains.kD * positionPerTick * 1000.0 * outputPerVolt, timeoutMs);
+        }
+        if (error == ErrorCode.OK) {
+            error = motor.config_kI(slot, 0.0, timeoutMs);
+        }
+        if (error == ErrorCode.OK) {
+            error = motor.config_kF(slot, gains.kV * velocityPerTick * outputPerVolt, timeoutMs);
+        }
+        return error;
+    }
+
+    /**
+     * Starts a profile to a new goal, picking the gains for the direction of travel.
+     * @param goal Units
+     * @param position Current position, units
+     */
+    public void setGoal(double goal, double position) {
+        this.goal = goal;
+        slot = goal >= position ? 0 : 1;
+        motor.selectProfileSlot(slot, 0);
+    }
+
+    /**
+     * Commands the current goal. Call every loop so the arbitrary feedforward follows the mechanism.
+     * @param feedforwardVolts Added on top of the Talon's closed loop, e.g. static friction and gravity
+     */
+    public void run(double feedforwardVolts) {
+        motor.set(ControlMode.MotionMagic, goal / positionPerTick, DemandType.ArbitraryFeedForward, feedforwardVolts / nominalVoltage);
+    }
+
+    public double getGoal() {
+        return goal;
+    }
+
+    /** @return true if moving in the positive direction */
+    public boolean isPositive() {
+        return slot == 0;
+    }
+
+    /** Sets a voltage through the compensated output, since the Talon's compensation is on */
+    public void setVoltage(double volts) {
+        motor.set(ControlMode.PercentOutput, volts / nominalVoltage);
+    }
+}
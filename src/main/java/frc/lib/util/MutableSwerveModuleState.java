@@ -0,0 +1,29 @@
+package frc.lib.util;
+
+/* Reusable counterpart to SwerveModuleState for the allocation-free drive path. */
+public class MutableSwerveModuleState {
+    public double speedMetersPerSecond;
+    public double angleDegrees;
+    /** Module steering rate feedforward from second order kinematics, 0 when unused. Kept by set() */
+    public double steerRateRadiansPerSecond;
+
+    public MutableSwerveModuleState() {}
+
+    public MutableSwerveModuleState(double speedMetersPerSecond, double angleDegrees) {
+        set(speedMetersPerSecond, angleDegrees);
+    }
+
+    public MutableSwerveModuleState set(double speedMetersPerSecond, double angleDegrees) {
+        this.speedMetersPerSecond = speedMetersPerSecond;
+        this.angleDegrees = angleDegrees;
+        return this;
+    }
+
+    public static MutableSwerveModuleState[] createArray(int length) {
+        MutableSwerveModuleState[] states = new MutableSwerveModuleState[length];
+        for (int i = 0; i < length; i++) {
+            states[i] = new MutableSwerveModuleState();
+        }
+        return states;
+    }
+}
@@ -1,17 +1,46 @@
 package frc.robot;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 import com.ctre.phoenix.motorcontrol.SupplyCurrentLimitConfiguration;
+import com.ctre.phoenix.motorcontrol.can.BaseTalon;
 import com.ctre.phoenix.motorcontrol.can.TalonFXConfiguration;
 import com.ctre.phoenix.sensors.AbsoluteSensorRange;
+import com.ctre.phoenix.sensors.CANCoder;
 import com.ctre.phoenix.sensors.CANCoderConfiguration;
+import com.ctre.phoenix.sensors.CANCoderStatusFrame;
 import com.ctre.phoenix.sensors.SensorInitializationStrategy;
 import com.ctre.phoenix.sensors.SensorTimeBase;
 
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
 public final class CTREConfigs {
     public TalonFXConfiguration swerveAngleFXConfig;
     public TalonFXConfiguration swerveDriveFXConfig;
     public CANCoderConfiguration swerveCanCoderConfig;
 
+    /* Status frame periods per device role, as fast as the code reads the data and no faster */
+    public TalonFXStatusFrames swerveAngleFrames;
+    public TalonFXStatusFrames swerveDriveFrames;
+    public CANCoderStatusFrames swerveCanCoderFrames;
+    public TalonFXStatusFrames armFrames;
+    public CANCoderStatusFrames armCanCoderFrames;
+    public TalonFXStatusFrames elevatorLeaderFrames;
+    public TalonFXStatusFrames elevatorFollowerFrames;
+    public TalonFXStatusFrames intakeFrames;
+
+    /* Estimated frames per second of each device by bus, {factory defaults, with profiles}. Keyed by device so retries count once */
+    private static final Map<String, Map<String, double[]>> busFrameRates = new LinkedHashMap<>();
+    private static final double canBitRate = 1e6;
+    /* Extended id, 8 data bytes and average bit stuffing */
+    private static final double bitsPerFrame = 135;
+    /* Slowest period Phoenix allows, used for frames nothing reads */
+    public static final int slowFramePeriod = 255;
+
     public CTREConfigs(){
         swerveAngleFXConfig = new TalonFXConfiguration();
         swerveDriveFXConfig = new TalonFXConfiguration();
@@ -50,5 +79,126 @@ public final class CTREConfigs {
         swerveCanCoderConfig.sensorDirection = Constants.Swerve.canCoderInvert;
         swerveCanCoderConfig.initializationStrategy = SensorInitializationStrategy.BootToAbsolutePosition;
         swerveCanCoderConfig.sensorTimeBase = SensorTimeBase.PerSecond;
+
+        /* Swerve Status Frames, module positions are sampled by the odometry thread */
+        swerveAngleFrames = new TalonFXStatusFrames(20, Constants.Swerve.odometryStatusFramePeriod, slowFramePeriod);
+        swerveDriveFrames = new TalonFXStatusFrames(20, Constants.Swerve.odometryStatusFramePeriod, slowFramePeriod);
+        /* Absolute position is only needed to seed the angle motors at boot, the rest is telemetry */
+        swerveCanCoderFrames = new CANCoderStatusFrames(100, slowFramePeriod);
+
+        /* Arm Status Frames, position comes from the CANCoder and output voltage is checked every loop for the limits */
+        armFrames = new TalonFXStatusFrames(20, 20, slowFramePeriod);
+        armCanCoderFrames = new CANCoderStatusFrames(20, slowFramePeriod);
+
+        /* Elevator Status Frames, only the leader's encoder is read, both currents are used for homing */
+        elevatorLeaderFrames = new TalonFXStatusFrames(20, 20, 20);
+        elevatorFollowerFrames = new TalonFXStatusFrames(20, slowFramePeriod, 20);
+
+        /* Intake Status Frames, velocity and current detect a held piece */
+        intakeFrames = new TalonFXStatusFrames(20, 20, 20);
+    }
+
+    private static synchronized void setFrameRates(String bus, String device, double defaultRate, double profileRate) {
+        busFrameRates.computeIfAbsent(bus, b -> new LinkedHashMap<>()).put(device, new double[] {defaultRate, profileRate});
+    }
+
+    private static double toUtilization(double framesPerSecond) {
+        return framesPerSecond * bitsPerFrame / canBitRate * 100.0;
+    }
+
+    /**
+     * Prints and publishes the estimated utilization of every bus a profile was applied on,
+     * with factory default periods and with the profiles. Call once all devices are configured.
+     */
+    public static synchronized void reportBusUtilization() {
+        for (Map.Entry<String, Map<String, double[]>> bus : busFrameRates.entrySet()) {
+            double defaultRate = 0;
+            double profileRate = 0;
+            for (double[] rates : bus.getValue().values()) {
+                defaultRate += rates[0];
+                profileRate += rates[1];
+            }
+            double before = toUtilization(defaultRate);
+            double after = toUtilization(profileRate);
+            System.out.println(String.format("CAN bus %s estimated utilization: %.1f%% default, %.1f%% with status frame profiles", bus.getKey(), before, after));
+            SmartDashboard.putNumber("CAN Util " + bus.getKey(), after);
+        }
+    }
+
+    /** Status frame periods in milliseconds for one Talon FX role. */
+    public static final class TalonFXStatusFrames {
+        /* Frames a Talon FX sends and their approximate factory periods */
+        private static final StatusFrameEnhanced[] frames = {
+            StatusFrameEnhanced.Status_1_General,
+            StatusFrameEnhanced.Status_2_Feedback0,
+            StatusFrameEnhanced.Status_Brushless_Current,
+            StatusFrameEnhanced.Status_4_AinTempVbat,
+            StatusFrameEnhanced.Status_10_Targets,
+            StatusFrameEnhanced.Status_12_Feedback1,
+            StatusFrameEnhanced.Status_13_Base_PIDF0,
+            StatusFrameEnhanced.Status_14_Turn_PIDF1,
+            StatusFrameEnhanced.Status_21_FeedbackIntegrated
+        };
+        private static final int[] defaultPeriods = {10, 20, 50, 160, 160, 160, 160, 160, 160};
+
+        private final int[] periods;
+
+        /**
+         * @param general Applied output, faults and limit switches
+         * @param feedback0 Selected sensor position and velocity
+         * @param current Stator and supply current
+         */
+        public TalonFXStatusFrames(int general, int feedback0, int current) {
+            periods = new int[frames.length];
+            Arrays.fill(periods, slowFramePeriod);
+            periods[0] = general;
+            periods[1] = feedback0;
+            periods[2] = current;
+        }
+
+        /** @return First error reported by the device, or OK */
+        public ErrorCode apply(BaseTalon motor, String bus) {
+            ErrorCode result = ErrorCode.OK;
+            double defaultRate = 0;
+            double profileRate = 0;
+            for (int i = 0; i < frames.length; i++) {
+                ErrorCode error = motor.setStatusFramePeriod(frames[i], periods[i], Constants.configTimeoutMs);
+                if (result == ErrorCode.OK) {
+                    result = error;
+                }
+                defaultRate += 1000.0 / defaultPeriods[i];
+                profileRate += 1000.0 / periods[i];
+            }
+            setFrameRates(bus, "TalonFX " + motor.getDeviceID(), defaultRate, profileRate);
+            return result;
+        }
+    }
+
+    /** Status frame periods in milliseconds for one CANCoder role. */
+    public static final class CANCoderStatusFrames {
+        private static final int defaultSensorDataPeriod = 10;
+        private static final int defaultVbatAndFaultsPeriod = 100;
+
+        private final int sensorData;
+        private final int vbatAndFaults;
+
+        /**
+         * @param sensorData Absolute and relative position, velocity
+         * @param vbatAndFaults Supply voltage and faults
+         */
+        public CANCoderStatusFrames(int sensorData, int vbatAndFaults) {
+            this.sensorData = sensorData;
+            this.vbatAndFaults = vbatAndFaults;
+        }
+
+        /** @return First error reported by the device, or OK */
+        public ErrorCode apply(CANCoder encoder, String bus) {
+            ErrorCode result = encoder.setStatusFramePeriod(CANCoderStatusFrame.SensorData, sensorData, Constants.configTimeoutMs);
+            ErrorCode error = encoder.setStatusFramePeriod(CANCoderStatusFrame.VbatAndFaults, vbatAndFaults, Constants.configTimeoutMs);
+            setFrameRates(bus, "CANCoder " + encoder.getDeviceID(),
+                1000.0 / defaultSensorDataPeriod + 1000.0 / defaultVbatAndFaultsPeriod,
+                1000.0 / sensorData + 1000.0 / vbatAndFaults);
+            return result == ErrorCode.OK ? error : result;
+        }
     }
 }
\ No newline at end of file
@@ -1,19 +1,26 @@
 package frc.robot;
 
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.pathplanner.lib.PathConstraints;
 
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
 import frc.lib.util.COTSFalconSwerveConstants;
 import frc.lib.util.SwerveModuleConstants;
 import frc.robot.lightstrip.LedState;
 import frc.robot.lightstrip.TempLedState;
+import frc.robot.superstructure.KeepOutRegion;
 
 public final class Constants {
     public static final double stickDeadband = 0.1;
+    public static final int configTimeoutMs = 50;
 
     public static final class Swerve {
         public static final int pigeonID = 13;
@@ -29,11 +36,13 @@ public final class Constants {
 
         /* Swerve Kinematics 
          * No need to ever change this unless you are not doing a traditional rectangular/square 4 module swerve */
-         public static final SwerveDriveKinematics swerveKinematics = new SwerveDriveKinematics(
+         public static final Translation2d[] moduleLocations = {
             new Translation2d(wheelBase / 2.0, trackWidth / 2.0),
             new Translation2d(wheelBase / 2.0, -trackWidth / 2.0),
             new Translation2d(-wheelBase / 2.0, trackWidth / 2.0),
-            new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0));
+            new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0)};
+
+         public static final SwerveDriveKinematics swerveKinematics = new SwerveDriveKinematics(moduleLocations);
 
         /* Module Gear Ratios */
         public static final double driveGearRatio = chosenModule.driveGearRatio;
@@ -67,6 +76,8 @@ public final class Constants {
         public static final double angleKI = chosenModule.angleKI;
         public static final double angleKD = chosenModule.angleKD;
         public static final double angleKF = chosenModule.angleKF;
+        /** Percent output per radian per second of module rotation, one over the module's free speed */
+        public static final double angleKV = angleGearRatio / Units.rotationsPerMinuteToRadiansPerSecond(6380.0);
 
         /* Drive Motor PID Values */
         public static final double driveKP = 0.05; //TODO: This must be tuned to specific robot
@@ -85,6 +96,24 @@ public final class Constants {
         public static final double maxSpeed = 4.5; //TODO: This must be tuned to specific robot
         /** Radians per Second */
         public static final double maxAngularVelocity = 10.0; //TODO: This must be tuned to specific robot
+        /** Scale drive speed by the cosine of the module angle error */
+        public static final boolean cosineScaleDrive = false;
+        /** Discretize chassis speeds and feed forward module steering rates, see SwerveKinematicsBuffer */
+        public static final boolean secondOrderKinematics = false;
+
+        /* Odometry Thread */
+        /** Hertz */
+        public static final double odometryFrequency = 250.0;
+        /** Milliseconds, feedback frames must arrive at least as fast as the odometry thread samples */
+        public static final int odometryStatusFramePeriod = 4;
+        /** Odometry trust, x and y in meters, heading in radians */
+        public static final Matrix<N3, N1> stateStdDevs = VecBuilder.fill(0.1, 0.1, 0.01);
+        /** Meters per second, a module this far off the rigid body fit is treated as slipping */
+        public static final double slipToleranceMPS = 0.25;
+        /** Fraction of the module's fitted motion that is also tolerated, so fast driving isn't flagged */
+        public static final double slipToleranceRatio = 0.15;
+        /** Seconds past the start of the loop that the heading is extrapolated to, about when module outputs apply */
+        public static final double headingLookahead = 0.01;
 
         /* Neutral Modes */
         public static final NeutralMode angleNeutralMode = NeutralMode.Coast;
@@ -174,6 +203,23 @@ public final class Constants {
         public static final Preset CUBE_3RD_STAGE_PRESET = new Preset(0.57, 1.22);   
         public static final Preset SINGLE_SUBSTATION_CUBE = new Preset(1.85, 0);
         public static final Preset SINGLE_SUBSTATION_CONE = new Preset(0.72, 0.68);
+
+        /** Every preset, the order is the index into the transition table */
+        public static final Preset[] kAll = {
+            STOW_PRESET,
+            GROUND_INTAKE_PRESET,
+            GROUND_INTAKE_CONE_PRESET,
+            GROUND_INTAKE_CUBE_PRESET,
+            SUBSTATION_INTAKE_CONE_PRESET,
+            SUBSTATION_INTAKE_PRESET,
+            SUBSTATION_INTAKE_CUBE_PRESET,
+            CONE_2ND_STAGE_PRESET,
+            CONE_3RD_STAGE_PRESET,
+            CUBE_2ND_STAGE_PRESET,
+            CUBE_3RD_STAGE_PRESET,
+            SINGLE_SUBSTATION_CUBE,
+            SINGLE_SUBSTATION_CONE
+        };
     }
 
     public static final class ModuleConstants {
@@ -317,6 +363,14 @@ public final class Constants {
 
         public static final double kVDown = 6.41;
         public static final double kSDown = -0.13;
+
+        // gravity model, defaults for the "Elevator" Preferences that characterization overwrites
+        // kS and kG split the up and down kS above, kV averages the two kVs
+
+        public static final double kS = 0.5645;
+        public static final double kG = 0.4345;
+        public static final double kV = 6.29;
+        public static final double kA = 0.0;
     
     
 
@@ -327,6 +381,13 @@ public final class Constants {
         public static final double kCurrentThreshold = 10.00;
         public static final double kHomingSpeed = -0.07;
 
+        // motion magic, runs the profile on the Talon at 1 kHz instead of on the RIO
+
+        public static final boolean kUseMotionMagic = false;
+        public static final double kNominalVoltage = 12.0;
+        /** 0 is a trapezoid, up to 8 for the smoothest S-curve */
+        public static final int kSCurveStrength = 2;
+
         public static final double kMountAngleRadians = 0.9599;
     }
 
@@ -351,6 +412,9 @@ public final class Constants {
         public static final double kBottomLimit = -0.3; 
         public static final double kTopLimit = 1.85; 
 
+        public static final double kMaxVel = 3.0;
+        public static final double kMaxAcc = 4.0;
+
         // feedback
 
         public static final double kPArm = 10.00;
@@ -372,12 +436,59 @@ public final class Constants {
         public static final double kVDown = 1.92;
         public static final double kSDown = -0.424;
 
+        // gravity model, defaults for the "Arm" Preferences that characterization overwrites
+        // kS and kG split the up and down kS above, kV averages the two kVs
+
+        public static final double kS = 0.5185;
+        /** Volts to hold the arm horizontal */
+        public static final double kG = 0.0945;
+        public static final double kV = 1.935;
+        public static final double kA = 0.0;
+
         public static final double kCurrentThreshold = 15.00;
 
+        // motion magic, runs the profile on the Talon at 1 kHz instead of on the RIO
+
+        public static final boolean kUseMotionMagic = false;
+        public static final double kNominalVoltage = 12.0;
+        /** 0 is a trapezoid, up to 8 for the smoothest S-curve */
+        public static final int kSCurveStrength = 2;
 
     }
 
+    public static final class SuperstructureConstants {
+        /** Move the arm and elevator together along planned joint space paths instead of separately */
+        public static final boolean kUseCoordinatedMoves = false;
+
+        /* Keep-out regions in joint space, arm radians by elevator meters */
+        public static final KeepOutRegion kGround = new KeepOutRegion("Ground", NewArmConstants.kBottomLimit, 0.0, ElevatorConstants.kBottomLimit, 0.05);
+        public static final KeepOutRegion kBumper = new KeepOutRegion("Bumper", NewArmConstants.kBottomLimit, -0.05, 0.2, 0.5);
+        public static final KeepOutRegion[] kKeepOutRegions = {kGround, kBumper};
+
+        /** Clearance kept around every region, radians for the arm and meters for the elevator */
+        public static final double kKeepOutMargin = 0.05;
+        /** A move starts from a stored plan when both joints are this close to a preset, radians and meters */
+        public static final double kPresetTolerance = 0.05;
+    }
 
+    public static final class CharacterizationConstants {
+        /* Quasistatic ramp rate in volts per second and dynamic step in volts, per mechanism */
+        public static final double kArmRampRate = 0.5;
+        public static final double kArmStepVoltage = 2.5;
+        public static final double kElevatorRampRate = 0.5;
+        public static final double kElevatorStepVoltage = 3.0;
+        public static final double kDriveRampRate = 1.0;
+        public static final double kDriveStepVoltage = 4.0;
+
+        public static final double kQuasistaticTimeout = 8.0;
+        public static final double kDynamicTimeout = 2.5;
+        /** Pause between tests so the mechanism comes to rest */
+        public static final double kRestTime = 1.5;
+        /** A test ends this far from a joint limit, radians for the arm and meters for the elevator */
+        public static final double kLimitMargin = 0.1;
+        /** Samples slower than this are left out of the fit, static friction is undefined at rest */
+        public static final double kMinVelocity = 0.02;
+    }
 
     public static final class LimelightConstants{
         public static double kPx = 5; //meters
@@ -407,6 +518,15 @@ public final class Constants {
 
         public static double limelightOffsetCenter = Units.inchesToMeters(10.5);
 
+        /* AprilTag pose estimation */
+        /** Base vision trust at 1 meter with one tag, x and y in meters, heading in radians. Scaled by distance squared over tag count */
+        public static final Matrix<N3, N1> visionStdDevs = VecBuilder.fill(0.3, 0.3, 0.9);
+        public static final double maxTagDistance = 4.0; //meters
+        public static final double maxSingleTagDistance = 2.5; //meters, single tag poses flip beyond this
+        public static final double maxPoseJump = 1.0; //meters from the current estimate
+        public static final double fieldLength = 16.54; //meters
+        public static final double fieldWidth = 8.02; //meters
+
         public static final class SecondStageConeConstants{
             public static double targetXMeters = 0.92;
             public static double targetYMeters = 0;
@@ -456,5 +576,12 @@ public final class Constants {
         public static final TrapezoidProfile.Constraints kThetaControllerConstraints =
             new TrapezoidProfile.Constraints(
                 kMaxAngularSpeedRadiansPerSecond, kMaxAngularSpeedRadiansPerSecondSquared);
+
+        /* Path constraints used by the autos, every path is pregenerated with each of them */
+        public static final PathConstraints kSlowPath = new PathConstraints(1.5, 1.75);
+        public static final PathConstraints kPickupPath = new PathConstraints(2.0, 2.75);
+        public static final PathConstraints kReturnPath = new PathConstraints(2.5, 2.75);
+        public static final PathConstraints kFastPath = new PathConstraints(2.5, 3);
+        public static final PathConstraints[] kPathConstraints = {kSlowPath, kPickupPath, kReturnPath, kFastPath};
     }
 }
@@ -4,75 +4,163 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 public final class Dashboard {
     public static final class Swerve {
-        public static final class Debugging extends BaseDashboard {}
-        public static final class Driver extends BaseDashboard {}
+        public static final Category Debugging = new Category();
+        public static final Category Driver = new Category();
     }
     public static final class Arm {
-        public static final class Debugging extends BaseDashboard {}
-        public static final class Driver extends BaseDashboard {}
+        public static final Category Debugging = new Category();
+        public static final Category Driver = new Category();
     }
     public static final class Elevator {
-        public static final class Debugging extends BaseDashboard {}
-        public static final class Driver extends BaseDashboard {}
+        public static final Category Debugging = new Category();
+        public static final Category Driver = new Category();
     }
     public static final class Intake {
-        public static final class Debugging extends BaseDashboard {}
-        public static final class Driver extends BaseDashboard {}
+        public static final Category Debugging = new Category();
+        public static final Category Driver = new Category();
     }
     public static final class Auto {
-        public static final class Debugging extends BaseDashboard {}
-        public static final class Driver extends BaseDashboard {}
+        public static final Category Debugging = new Category();
+        public static final Category Driver = new Category();
     }
     public static final class Tele {
-        public static final class Debugging extends BaseDashboard {}
-        public static final class Driver extends BaseDashboard {}
+        public static final Category Debugging = new Category();
+        public static final Category Driver = new Category();
     }
     public static final class Limelight {
-        public static final class Debugging extends BaseDashboard {}
-        public static final class Driver extends BaseDashboard {}
+        public static final Category Debugging = new Category();
+        public static final Category Driver = new Category();
     }
-}
 
-class BaseDashboard {
-    static boolean run;
+    /**
+     * One group of dashboard values with its own enable flag. Loop code should keep the handles from
+     * number, bool and string in fields: setting a handle in a disabled category is a single flag check,
+     * and the publisher is only created the first time the category is enabled and the handle is set.
+     */
+    public static final class Category {
+        private volatile boolean enabled;
 
-    static public void set(boolean value) {
-        run = value;
-    }
+        private Category() {}
 
-    static public void putNumber(String key, double value) {
-        if(run == true) {
-            SmartDashboard.putNumber(key, value);
+        public void set(boolean value) {
+            enabled = value;
         }
-    }
 
-    static public void putNumberArray(String key, double[] value) {
-        if(run == true) {
-            SmartDashboard.putNumberArray(key, value);
+        /** Guard for values that are expensive to compute, like CAN reads */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public NumberEntry number(String key) {
+            return new NumberEntry(this, key);
+        }
+
+        public BooleanEntry bool(String key) {
+            return new BooleanEntry(this, key);
+        }
+
+        public StringEntry string(String key) {
+            return new StringEntry(this, key);
+        }
+
+        /* One off writes, these resolve the key on every call */
+        public void putNumber(String key, double value) {
+            if(enabled) {
+                Telemetry.number(key).set(value);
+            }
+        }
+
+        public void putNumberArray(String key, double[] value) {
+            if(enabled) {
+                Telemetry.numberArray(key).set(value.clone());
+            }
+        }
+
+        public void putString(String key, String value) {
+            if(enabled) {
+                Telemetry.string(key).set(value);
+            }
+        }
+
+        public void putStringArray(String key, String[] value) {
+            if(enabled) {
+                SmartDashboard.putStringArray(key, value);
+            }
+        }
+
+        public void putBoolean(String key, boolean value) {
+            if(enabled) {
+                Telemetry.bool(key).set(value);
+            }
         }
-    }
 
-    public static void putString(String key, String value) {
-        if(run == true) {
-            SmartDashboard.putString(key, value);
+        public void putBooleanArray(String key, boolean[] value) {
+            if(enabled) {
+                SmartDashboard.putBooleanArray(key, value);
+            }
         }
     }
 
-    public void putStringArray(String key, String[] value) {
-        if(run == true) {
-            SmartDashboard.putStringArray(key, value);
+    public static final class NumberEntry {
+        private final Category category;
+        private final String key;
+        private Telemetry.Entry entry;
+
+        private NumberEntry(Category category, String key) {
+            this.category = category;
+            this.key = key;
+        }
+
+        public void set(double value) {
+            if(!category.enabled) {
+                return;
+            }
+            if(entry == null) {
+                entry = Telemetry.number(key);
+            }
+            entry.set(value);
         }
     }
 
-    public static void putBoolean(String key, boolean value) {
-        if(run == true) {
-            SmartDashboard.putBoolean(key, value);
+    public static final class BooleanEntry {
+        private final Category category;
+        private final String key;
+        private Telemetry.Entry entry;
+
+        private BooleanEntry(Category category, String key) {
+            this.category = category;
+            this.key = key;
+        }
+
+        public void set(boolean value) {
+            if(!category.enabled) {
+                return;
+            }
+            if(entry == null) {
+                entry = Telemetry.bool(key);
+            }
+            entry.set(value);
         }
     }
 
-    public void putBooleanArray(String key, boolean[] value) {
-        if(run == true) {
-            SmartDashboard.putBooleanArray(key, value);
+    public static final class StringEntry {
+        private final Category category;
+        private final String key;
+        private Telemetry.Entry entry;
+
+        private StringEntry(Category category, String key) {
+            this.category = category;
+            this.key = key;
+        }
+
+        public void set(String value) {
+            if(!category.enabled) {
+                return;
+            }
+            if(entry == null) {
+                entry = Telemetry.string(key);
+            }
+            entry.set(value);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package frc.robot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.ctre.phoenix.ErrorCode;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Runs the blocking CTRE configuration of every device in parallel so robotInit can return
+ * while the devices are still being configured. Each device is retried until its configuration
+ * reports OK, and subsystems poll isDone()/isReady() before using it.
+ *
+ * The timeout counts from when a device's configuration starts running, not from when it was
+ * queued. A configuration that overruns it is reported, but the device is only done once its
+ * configuration has actually returned, so no late config call can land after a subsystem has
+ * started using the device.
+ */
+public class DeviceStartup {
+    public static final int maxAttempts = 3;
+    /* Whole device, all attempts included, from when its configuration starts */
+    public static final double deviceTimeoutSeconds = 5.0;
+    private static final int threads = 6;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+        Thread thread = new Thread(runnable, "Device Startup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Device Startup Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, CompletableFuture<ErrorCode>> devices = new LinkedHashMap<>();
+    private final double startTime = Timer.getFPGATimestamp();
+
+    /**
+     * Starts configuring a device in the background.
+     * @param name Unique name, also used for the dashboard and error messages
+     * @param configure Blocking configuration, returns the first error a config call reported
+     */
+    public synchronized void submit(String name, Supplier<ErrorCode> configure) {
+        CompletableFuture<ErrorCode> future = new CompletableFuture<>();
+        devices.put(name, future);
+        executor.execute(() -> {
+            double deadline = Timer.getFPGATimestamp() + deviceTimeoutSeconds;
+            watchdog.schedule(() -> {
+                if (!future.isDone()) {
+                    DriverStation.reportError(name + " is still configuring after " + deviceTimeoutSeconds + " s, it stays not ready until it finishes", false);
+                }
+            }, (long) (deviceTimeoutSeconds * 1000), TimeUnit.MILLISECONDS);
+
+            ErrorCode error;
+            try {
+                error = configureWithRetries(name, configure, deadline);
+            } catch (RuntimeException e) {
+                DriverStation.reportError(name + " config threw " + e, false);
+                error = ErrorCode.GeneralError;
+            }
+            report(name, error);
+            future.complete(error);
+        });
+    }
+
+    private ErrorCode configureWithRetries(String name, Supplier<ErrorCode> configure, double deadline) {
+        ErrorCode error = ErrorCode.OK;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            error = configure.get();
+            if (error == ErrorCode.OK) {
+                break;
+            }
+            DriverStation.reportWarning(name + " config attempt " + attempt + " failed: " + error, false);
+            if (Timer.getFPGATimestamp() >= deadline) {
+                /* Out of time, don't start another attempt */
+                break;
+            }
+        }
+        return error;
+    }
+
+    private void report(String name, ErrorCode error) {
+        boolean ready = error == ErrorCode.OK;
+        if (!ready) {
+            DriverStation.reportError(name + " was not configured: " + error, false);
+        }
+        System.out.println(String.format("%s %s after %.2f s", name, ready ? "ready" : "FAILED", Timer.getFPGATimestamp() - startTime));
+        SmartDashboard.putBoolean("Ready " + name, ready);
+    }
+
+    /** @return true once the device's configuration has returned, successfully or not */
+    public synchronized boolean isDone(String name) {
+        CompletableFuture<ErrorCode> future = devices.get(name);
+        return future != null && future.isDone();
+    }
+
+    /** @return true once the device has been configured without errors */
+    public synchronized boolean isReady(String name) {
+        CompletableFuture<ErrorCode> future = devices.get(name);
+        return future != null && future.isDone() && future.join() == ErrorCode.OK;
+    }
+
+    /** @return true once every device submitted so far has finished configuring */
+    public synchronized boolean isAllDone() {
+        for (CompletableFuture<ErrorCode> future : devices.values()) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Names of the devices that finished configuring with an error */
+    public synchronized List<String> getFailed() {
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<ErrorCode>> device : devices.entrySet()) {
+            if (device.getValue().isDone() && device.getValue().join() != ErrorCode.OK) {
+                failed.add(device.getKey());
+            }
+        }
+        return failed;
+    }
+
+    /** @return Completes once every device submitted so far has finished configuring */
+    public synchronized CompletableFuture<Void> whenAllDone() {
+        return CompletableFuture.allOf(devices.values().toArray(new CompletableFuture<?>[0]));
+    }
+
+    /** @return The first error that is not OK, or OK */
+    public static ErrorCode firstError(ErrorCode... errors) {
+        for (ErrorCode error : errors) {
+            if (error != ErrorCode.OK) {
+                return error;
+            }
+        }
+        return ErrorCode.OK;
+    }
+}
@@ -0,0 +1,120 @@
+package frc.robot;
+
+import com.ctre.phoenix.sensors.Pigeon2;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * The only reader of the gyro's yaw. Each sample reads yaw and yaw rate together and timestamps
+ * them; the odometry thread samples at its own rate, and the main loop takes one snapshot per cycle
+ * that is extrapolated along the yaw rate to the instant its outputs take effect. That keeps
+ * field-relative driving from lagging a frame behind during fast spins.
+ *
+ * sample() may be called from any thread, refresh() and the getters from the main thread only.
+ */
+public class HeadingService {
+    /* Phoenix 5 doesn't expose frame timestamps, so assume a frame is half a period old when read */
+    private static final double frameAge = Constants.Swerve.odometryStatusFramePeriod / 1000.0 / 2.0;
+    /* A sample older than this means nothing else is sampling, so refresh() reads the gyro itself */
+    private static final double maxSampleAge = 0.05;
+
+    private final Pigeon2 gyro;
+    private final double[] rawGyro = new double[3];
+
+    /* Newest sample, guarded by this */
+    private double sampleYaw = 0.0;
+    private double sampleRate = 0.0;
+    private double sampleTimestamp = Double.NEGATIVE_INFINITY;
+
+    /* Main loop snapshot, extrapolated to the control instant */
+    private double yawDegrees = 0.0;
+    private double rateDegreesPerSecond = 0.0;
+    private Rotation2d yaw = new Rotation2d();
+
+    public HeadingService(Pigeon2 gyro) {
+        this.gyro = gyro;
+    }
+
+    /**
+     * Reads yaw and yaw rate once and stores them as the newest sample.
+     * @return Yaw in degrees, CCW+, extrapolated to the time of the read
+     */
+    public double sample() {
+        double rawYaw;
+        double rate;
+        synchronized (rawGyro) {
+            rawYaw = gyro.getYaw();
+            gyro.getRawGyro(rawGyro);
+            rate = rawGyro[2];
+        }
+        double now = Timer.getFPGATimestamp();
+        if (Constants.Swerve.invertGyro) {
+            rawYaw = 360 - rawYaw;
+            rate = -rate;
+        }
+        double yaw = rawYaw + rate * frameAge;
+
+        synchronized (this) {
+            sampleYaw = yaw;
+            sampleRate = rate;
+            sampleTimestamp = now;
+        }
+        return yaw;
+    }
+
+    /** Takes this cycle's snapshot, call once at the start of the loop before anything reads the heading. */
+    public void refresh() {
+        double now = Timer.getFPGATimestamp();
+        boolean stale;
+        synchronized (this) {
+            stale = now - sampleTimestamp > maxSampleAge;
+        }
+        if (stale) {
+            sample();
+        }
+
+        double latestYaw;
+        double latestTimestamp;
+        synchronized (this) {
+            latestYaw = sampleYaw;
+            rateDegreesPerSecond = sampleRate;
+            latestTimestamp = sampleTimestamp;
+        }
+        double controlTime = now + Constants.Swerve.headingLookahead;
+        yawDegrees = latestYaw + rateDegreesPerSecond * (controlTime - latestTimestamp);
+        yaw = Rotation2d.fromDegrees(yawDegrees);
+    }
+
+    /**
+     * Sets the gyro's yaw and the snapshot together so the old heading isn't used until the next sample.
+     * @param degrees CCW+
+     */
+    public void reset(double degrees) {
+        synchronized (rawGyro) {
+            gyro.setYaw(Constants.Swerve.invertGyro ? 360 - degrees : degrees);
+        }
+        synchronized (this) {
+            sampleYaw = degrees;
+            sampleRate = 0.0;
+            sampleTimestamp = Timer.getFPGATimestamp();
+        }
+        yawDegrees = degrees;
+        rateDegreesPerSecond = 0.0;
+        yaw = Rotation2d.fromDegrees(degrees);
+    }
+
+    /** @return This cycle's heading in degrees, CCW+ */
+    public double getYawDegrees() {
+        return yawDegrees;
+    }
+
+    public Rotation2d getYaw() {
+        return yaw;
+    }
+
+    /** @return This cycle's yaw rate in degrees per second, CCW+ */
+    public double getRateDegreesPerSecond() {
+        return rateDegreesPerSecond;
+    }
+}
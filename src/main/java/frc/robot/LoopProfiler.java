@@ -0,0 +1,203 @@
+package frc.robot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+/**
+ * Times each subsystem periodic and each command execute inside CommandScheduler.run() into
+ * preallocated log scale histograms. Once a second it publishes p50, p99 and max for every section.
+ * When a loop overruns, the section that took the longest in that loop gets the blame.
+ *
+ * Subsystems wrap their periodic() in start() and stop() of their own section. Commands are timed
+ * from the scheduler's execute callbacks, which fire right after a command's execute() returns. A
+ * command's time runs from the previous callback, or from the end of the last subsystem periodic
+ * for the first command, to its own callback. It includes the previous command's isFinished() and
+ * end(). Whatever runs after the last callback, such as scheduling default commands, only counts
+ * toward the whole loop.
+ *
+ * Main robot thread only.
+ */
+public final class LoopProfiler {
+    private static final long loopPeriodNanos = (long) (TimedRobot.kDefaultPeriod * 1e9);
+    private static final int publishPeriodLoops = 50;
+
+    /* 8 buckets per power of two of microseconds, up to 2^20 us (about a second), longer goes in the last */
+    private static final int subBucketBits = 3;
+    private static final int subBuckets = 1 << subBucketBits;
+    private static final int bucketCount = 18 * subBuckets;
+
+    private static final ArrayList<Section> sections = new ArrayList<>();
+    private static final IdentityHashMap<Command, Section> commandSections = new IdentityHashMap<>();
+    private static final Section loop = new Section("Loop");
+
+    private static long loopStart;
+    /* End of the last timed piece this loop, where the next command's time starts */
+    private static long lastMark;
+    private static int loopsSincePublish = 0;
+
+    private static final Telemetry.Entry lastOverrunEntry = Telemetry.string("Profiler/Last Overrun");
+
+    private LoopProfiler() {}
+
+    /** One timed piece of the loop, create once and keep it in a field. */
+    public static final class Section {
+        public final String name;
+        private final long[] buckets = new long[bucketCount];
+        private long samples = 0;
+        private long maxNanos = 0;
+        private long overruns = 0;
+        /* Time spent in this section during the current loop */
+        private long loopNanos = 0;
+        private long startNanos;
+
+        private final Telemetry.Entry p50Entry;
+        private final Telemetry.Entry p99Entry;
+        private final Telemetry.Entry maxEntry;
+        private final Telemetry.Entry overrunEntry;
+
+        private Section(String name) {
+            this.name = name;
+            p50Entry = Telemetry.number("Profiler/" + name + "/p50 ms");
+            p99Entry = Telemetry.number("Profiler/" + name + "/p99 ms");
+            maxEntry = Telemetry.number("Profiler/" + name + "/max ms");
+            overrunEntry = Telemetry.number("Profiler/" + name + "/overruns");
+        }
+
+        public void start() {
+            startNanos = System.nanoTime();
+        }
+
+        public void stop() {
+            long now = System.nanoTime();
+            record(now - startNanos);
+            lastMark = now;
+        }
+
+        private void record(long nanos) {
+            buckets[bucketOf(nanos)]++;
+            samples++;
+            loopNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        /* Upper bound of the bucket holding the given fraction of samples, in nanoseconds */
+        private long percentile(double fraction) {
+            long rank = (long) Math.ceil(samples * fraction);
+            long seen = 0;
+            for (int i = 0; i < bucketCount; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        private void publish() {
+            if (samples > 0) {
+                p50Entry.set(percentile(0.5) / 1e6);
+                p99Entry.set(percentile(0.99) / 1e6);
+                maxEntry.set(maxNanos / 1e6);
+            }
+            overrunEntry.set(overruns);
+            Arrays.fill(buckets, 0);
+            samples = 0;
+            maxNanos = 0;
+        }
+    }
+
+    /* Values below 8 us get their own bucket, above that the top 3 bits below the leading one pick the sub-bucket */
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        if (micros < subBuckets) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        int index = (exponent - subBucketBits + 1) * subBuckets + subBucket;
+        return Math.min(index, bucketCount - 1);
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < subBuckets) {
+            return (index + 1) * 1000L;
+        }
+        int exponent = index / subBuckets + subBucketBits - 1;
+        long subBucket = index % subBuckets;
+        return ((subBuckets + subBucket + 1) << (exponent - subBucketBits)) * 1000L;
+    }
+
+    /** @return The section with this name, commands with the same name share one */
+    public static Section section(String name) {
+        for (int i = 0; i < sections.size(); i++) {
+            if (sections.get(i).name.equals(name)) {
+                return sections.get(i);
+            }
+        }
+        Section section = new Section(name);
+        sections.add(section);
+        return section;
+    }
+
+    /** Hooks the scheduler so every command's execute is timed, call once at startup. */
+    public static void install() {
+        CommandScheduler.getInstance().onCommandExecute(LoopProfiler::afterExecute);
+    }
+
+    private static void afterExecute(Command command) {
+        long now = System.nanoTime();
+        Section section = commandSections.get(command);
+        if (section == null) {
+            section = section(command.getName());
+            commandSections.put(command, section);
+        }
+        section.record(now - lastMark);
+        lastMark = now;
+    }
+
+    /** Call right before CommandScheduler.run() */
+    public static void beginLoop() {
+        for (int i = 0; i < sections.size(); i++) {
+            sections.get(i).loopNanos = 0;
+        }
+        loopStart = System.nanoTime();
+        lastMark = loopStart;
+    }
+
+    /** Call right after CommandScheduler.run() */
+    public static void endLoop() {
+        long now = System.nanoTime();
+        long total = now - loopStart;
+        loop.record(total);
+
+        if (total > loopPeriodNanos) {
+            Section worst = null;
+            for (int i = 0; i < sections.size(); i++) {
+                Section section = sections.get(i);
+                if (worst == null || section.loopNanos > worst.loopNanos) {
+                    worst = section;
+                }
+            }
+            loop.overruns++;
+            if (worst != null) {
+                worst.overruns++;
+                lastOverrunEntry.set(worst.name);
+            }
+        }
+
+        if (++loopsSincePublish >= publishPeriodLoops) {
+            loopsSincePublish = 0;
+            loop.publish();
+            for (int i = 0; i < sections.size(); i++) {
+                sections.get(i).publish();
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package frc.robot;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Samples every swerve module and the gyro back to back on a dedicated high rate thread and
+ * integrates odometry from those samples. Vision measurements are fused in from the main loop
+ * at their capture time. The main loop only reads the newest fused pose.
+ *
+ * Wheel slip is rejected before integrating: every sample, the modules' displacements are fit to
+ * one rigid body motion with the rotation taken from the gyro, and modules that disagree with the
+ * fit are down-weighted. The estimator is fed module positions that follow the fit.
+ */
+public class OdometryThread {
+    /* Must be a power of two so the ring index can be masked */
+    public static final int bufferSize = 64;
+
+    private final SwerveModule[] modules;
+    private final DoubleSupplier yawSupplier;
+    private final Notifier notifier;
+    private final SwerveDrivePoseEstimator poseEstimator;
+
+    /* Timestamped ring buffer of raw samples, newest at (sampleCount - 1) & (bufferSize - 1) */
+    private final double[] timestamps = new double[bufferSize];
+    private final double[] yaws = new double[bufferSize];
+    private final double[][] distances;
+    private final double[][] angles;
+    private long sampleCount = 0;
+
+    /* Scratch for the sampling thread so CAN reads happen outside the lock */
+    private final double[] sampledDistances;
+    private final double[] sampledAngles;
+
+    /* Fed to the estimator, advanced by the slip rejected fit rather than the raw readings */
+    private final SwerveModulePosition[] positions;
+
+    /* Slip rejection state, written by the sampling thread under the lock */
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double[] previousDistances;
+    private double previousYaw;
+    private double previousTimestamp;
+    private final double[] translationX;
+    private final double[] translationY;
+    private final double[] weights;
+    /* Largest slip ratio per module since the last copySlipRatios() */
+    private final double[] peakSlipRatios;
+
+    private Pose2d pose = new Pose2d();
+
+    /**
+     * @param modules Swerve modules, indexed by module number
+     * @param yawSupplier Gyro yaw in degrees, CCW+
+     */
+    public OdometryThread(SwerveModule[] modules, DoubleSupplier yawSupplier) {
+        this.modules = modules;
+        this.yawSupplier = yawSupplier;
+
+        distances = new double[bufferSize][modules.length];
+        angles = new double[bufferSize][modules.length];
+        sampledDistances = new double[modules.length];
+        sampledAngles = new double[modules.length];
+        positions = new SwerveModulePosition[modules.length];
+        for (int i = 0; i < modules.length; i++) {
+            positions[i] = new SwerveModulePosition();
+        }
+
+        moduleX = new double[modules.length];
+        moduleY = new double[modules.length];
+        for (int i = 0; i < modules.length; i++) {
+            moduleX[i] = Constants.Swerve.moduleLocations[i].getX();
+            moduleY[i] = Constants.Swerve.moduleLocations[i].getY();
+        }
+        previousDistances = new double[modules.length];
+        translationX = new double[modules.length];
+        translationY = new double[modules.length];
+        weights = new double[modules.length];
+        peakSlipRatios = new double[modules.length];
+
+        readModules();
+        copyToPositions();
+        previousYaw = yawSupplier.getAsDouble();
+        previousTimestamp = Timer.getFPGATimestamp();
+        poseEstimator = new SwerveDrivePoseEstimator(
+            Constants.Swerve.swerveKinematics, 
+            Rotation2d.fromDegrees(yawSupplier.getAsDouble()), 
+            positions, 
+            new Pose2d(), 
+            Constants.Swerve.stateStdDevs, 
+            Constants.LimelightConstants.visionStdDevs);
+
+        notifier = new Notifier(this::sample);
+        notifier.setName("Odometry");
+    }
+
+    /**
+     * Re-reads every module and the gyro and resets the estimator to its current pose from them.
+     * Must be called before start(), e.g. after the modules have been reset to absolute.
+     */
+    public synchronized void resync() {
+        readModules();
+        copyToPositions();
+        previousYaw = yawSupplier.getAsDouble();
+        previousTimestamp = Timer.getFPGATimestamp();
+        poseEstimator.resetPosition(Rotation2d.fromDegrees(previousYaw), positions, pose);
+    }
+
+    public void start() {
+        notifier.startPeriodic(1.0 / Constants.Swerve.odometryFrequency);
+    }
+
+    public void stop() {
+        notifier.stop();
+    }
+
+    /* Reads all modules and the gyro as close together as possible, then integrates */
+    private void sample() {
+        double start = Timer.getFPGATimestamp();
+        readModules();
+        double yaw = yawSupplier.getAsDouble();
+        double timestamp = (start + Timer.getFPGATimestamp()) / 2.0;
+
+        synchronized (this) {
+            int index = (int) (sampleCount & (bufferSize - 1));
+            timestamps[index] = timestamp;
+            yaws[index] = yaw;
+            for (int i = 0; i < modules.length; i++) {
+                distances[index][i] = sampledDistances[i];
+                angles[index][i] = sampledAngles[i];
+            }
+            sampleCount++;
+
+            advanceFittedPositions(yaw, timestamp);
+            pose = poseEstimator.updateWithTime(timestamp, Rotation2d.fromDegrees(yaw), positions);
+        }
+    }
+
+    /**
+     * Fits the newest module displacements to one rigid body motion and advances the estimator's
+     * module positions along the fit. The rotation comes from the gyro, which doesn't slip, so only
+     * the translation is fit, by iteratively reweighted least squares: a module's weight falls off
+     * with the square of how far it is from the fit relative to the slip tolerance.
+     */
+    private void advanceFittedPositions(double yaw, double timestamp) {
+        double dt = Math.max(timestamp - previousTimestamp, 1e-4);
+        double dtheta = Math.toRadians(yaw - previousYaw);
+        previousYaw = yaw;
+        /* Far too fast to be rotation, the gyro was just set to a new heading */
+        if (Math.abs(dtheta) > Math.PI / 4) {
+            dtheta = 0.0;
+        }
+        previousTimestamp = timestamp;
+
+        /* What each module says the robot center moved, once the rotation is taken out */
+        for (int i = 0; i < modules.length; i++) {
+            double delta = sampledDistances[i] - previousDistances[i];
+            double angle = Math.toRadians(sampledAngles[i]);
+            translationX[i] = delta * Math.cos(angle) + dtheta * moduleY[i];
+            translationY[i] = delta * Math.sin(angle) - dtheta * moduleX[i];
+            previousDistances[i] = sampledDistances[i];
+            weights[i] = 1.0;
+        }
+
+        double fitX = 0.0;
+        double fitY = 0.0;
+        for (int iteration = 0; iteration < 3; iteration++) {
+            double sumWeights = 0.0;
+            fitX = 0.0;
+            fitY = 0.0;
+            for (int i = 0; i < modules.length; i++) {
+                fitX += weights[i] * translationX[i];
+                fitY += weights[i] * translationY[i];
+                sumWeights += weights[i];
+            }
+            fitX /= sumWeights;
+            fitY /= sumWeights;
+
+            for (int i = 0; i < modules.length; i++) {
+                double residual = Math.hypot(translationX[i] - fitX, translationY[i] - fitY);
+                double tolerance = slipTolerance(i, fitX, fitY, dtheta, dt);
+                weights[i] = 1.0 / (1.0 + (residual / tolerance) * (residual / tolerance));
+            }
+        }
+
+        for (int i = 0; i < modules.length; i++) {
+            /* The module's displacement if it moved with the fitted body */
+            double moduleDx = fitX - dtheta * moduleY[i];
+            double moduleDy = fitY + dtheta * moduleX[i];
+            double moduleDistance = Math.hypot(moduleDx, moduleDy);
+
+            double residual = Math.hypot(translationX[i] - fitX, translationY[i] - fitY);
+            double slipRatio = residual / Math.max(moduleDistance, Constants.Swerve.slipToleranceMPS * dt);
+            peakSlipRatios[i] = Math.max(peakSlipRatios[i], slipRatio);
+
+            positions[i].distanceMeters += moduleDistance;
+            /*
+             * Rotation2d is immutable and SwerveModulePosition only takes one, so a new heading costs an
+             * allocation. It is small and short lived next to what updateWithTime() allocates on every
+             * sample anyway: a copy of each position for its history, the twist and the new pose. A
+             * module that didn't move keeps its heading and allocates nothing.
+             */
+            if (moduleDistance > 1e-6) {
+                positions[i].angle = new Rotation2d(moduleDx, moduleDy);
+            }
+        }
+    }
+
+    private double slipTolerance(int module, double fitX, double fitY, double dtheta, double dt) {
+        double moduleDistance = Math.hypot(fitX - dtheta * moduleY[module], fitY + dtheta * moduleX[module]);
+        return Math.max(Constants.Swerve.slipToleranceMPS * dt, Constants.Swerve.slipToleranceRatio * moduleDistance);
+    }
+
+    private void readModules() {
+        for (int i = 0; i < modules.length; i++) {
+            sampledDistances[i] = modules[i].sampleDistanceMeters();
+            sampledAngles[i] = modules[i].sampleAngleDegrees();
+        }
+    }
+
+    /* Only at construction and resync(), not per sample */
+    private void copyToPositions() {
+        for (int i = 0; i < modules.length; i++) {
+            positions[i].distanceMeters = sampledDistances[i];
+            positions[i].angle = Rotation2d.fromDegrees(sampledAngles[i]);
+            previousDistances[i] = sampledDistances[i];
+        }
+    }
+
+    /**
+     * Copies each module's largest slip ratio since the last call and starts a new window. The slip
+     * ratio is how far the module is from the rigid body fit, relative to how far the fit moved it.
+     * @param out One per module
+     */
+    public synchronized void copySlipRatios(double[] out) {
+        for (int i = 0; i < modules.length; i++) {
+            out[i] = peakSlipRatios[i];
+            peakSlipRatios[i] = 0.0;
+        }
+    }
+
+    public synchronized Pose2d getPose() {
+        return pose;
+    }
+
+    public synchronized void resetPose(Pose2d newPose) {
+        /*
+         * Reset from the newest sample, the sampling thread owns the scratch arrays. Its yaw pairs with
+         * the positions and needs no gyro read, which would stall the sampler and getPose() behind the lock.
+         */
+        poseEstimator.resetPosition(Rotation2d.fromDegrees(previousYaw), positions, newPose);
+        pose = poseEstimator.getEstimatedPosition();
+    }
+
+    /**
+     * Fuses a vision pose captured in the past. The estimator replays the odometry recorded
+     * since the capture time on top of the corrected pose.
+     * @param visionPose Field relative robot pose
+     * @param timestamp FPGA timestamp of the camera capture in seconds
+     * @param stdDevs Standard deviations of x, y (meters) and heading (radians)
+     */
+    public synchronized void addVisionMeasurement(Pose2d visionPose, double timestamp, Matrix<N3, N1> stdDevs) {
+        poseEstimator.addVisionMeasurement(visionPose, timestamp, stdDevs);
+        pose = poseEstimator.getEstimatedPosition();
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @param age 0 for the newest sample, up to bufferSize - 1
+     * @return FPGA timestamp of the sample in seconds
+     */
+    public synchronized double getTimestamp(int age) {
+        return timestamps[indexOf(age)];
+    }
+
+    /**
+     * @param age 0 for the newest sample, up to bufferSize - 1
+     * @return Gyro yaw of the sample in degrees
+     */
+    public synchronized double getYaw(int age) {
+        return yaws[indexOf(age)];
+    }
+
+    /**
+     * @param age 0 for the newest sample, up to bufferSize - 1
+     * @param moduleNumber Module to read
+     * @return Drive distance of the module in meters
+     */
+    public synchronized double getDistance(int age, int moduleNumber) {
+        return distances[indexOf(age)][moduleNumber];
+    }
+
+    /**
+     * @param age 0 for the newest sample, up to bufferSize - 1
+     * @param moduleNumber Module to read
+     * @return Module angle in degrees
+     */
+    public synchronized double getAngle(int age, int moduleNumber) {
+        return angles[indexOf(age)][moduleNumber];
+    }
+
+    private int indexOf(int age) {
+        return (int) ((sampleCount - 1 - age) & (bufferSize - 1));
+    }
+}
@@ -8,6 +8,8 @@ import com.pathplanner.lib.server.PathPlannerServer;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.autos.TrajectoryCache;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -17,6 +19,8 @@ import edu.wpi.first.wpilibj2.command.CommandScheduler;
  */
 public class Robot extends TimedRobot {
   public static CTREConfigs ctreConfigs;
+  public static DeviceStartup startup;
+  public static TrajectoryCache trajectories;
 
   private Command m_autonomousCommand;
 
@@ -28,13 +32,34 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotInit() {
+    // Started first so device startup and path loading are recorded too
+    RobotLog.start();
+    logCommands();
+    LoopProfiler.install();
     ctreConfigs = new CTREConfigs();
+    // Devices are configured in the background, subsystems check readiness before using them
+    startup = new DeviceStartup();
+    // Paths are compiled at build time; without them they are generated in the background so starting auto does not parse anything
+    trajectories = new TrajectoryCache();
+    if (!trajectories.hasCompiled()) {
+      trajectories.preloadAll(AutoConstants.kPathConstraints);
+    }
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
+    startup.whenAllDone().thenRun(CTREConfigs::reportBusUtilization);
     PathPlannerServer.startServer(5811);
   }
 
+  /* One string entry per event so the order of starts and ends survives */
+  private static void logCommands() {
+    RobotLog.Signal commandLog = RobotLog.string("Commands/Events");
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    scheduler.onCommandInitialize(command -> commandLog.record("start " + command.getName()));
+    scheduler.onCommandFinish(command -> commandLog.record("finish " + command.getName()));
+    scheduler.onCommandInterrupt(command -> commandLog.record("interrupt " + command.getName()));
+  }
+
   /**
    * This function is called every robot packet, no matter the mode. Use this for items like
    * diagnostics that you want ran during disabled, autonomous, teleoperated and test.
@@ -48,7 +73,9 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    LoopProfiler.beginLoop();
     CommandScheduler.getInstance().run();
+    LoopProfiler.endLoop();
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
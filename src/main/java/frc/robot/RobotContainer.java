@@ -69,6 +69,8 @@ public class RobotContainer {
     /** The container for the robot. Contains subsystems, OI devices, and commands. */
     public RobotContainer() {
         startDashboard();
+        s_Swerve.setVisionSource(limelight::getBotPoseEstimate);
+        arm.setElevatorAccelerationSupplier(elevator::getSetpointAcceleration);
         s_Swerve.setDefaultCommand(
             new TeleopSwerve(
                 s_Swerve, 
@@ -106,6 +108,11 @@ public class RobotContainer {
          
         SmartDashboard.putData(m_Chooser);
 
+        /* Feedforward characterization, run from the dashboard with the robot on blocks or with room to drive */
+        SmartDashboard.putData("Characterize Arm", Characterization.arm(arm));
+        SmartDashboard.putData("Characterize Elevator", Characterization.elevator(elevator));
+        SmartDashboard.putData("Characterize Drive", Characterization.drive(s_Swerve));
+
         // Configure the button bindings
         configureButtonBindings();
     }
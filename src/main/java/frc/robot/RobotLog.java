@@ -0,0 +1,214 @@
+package frc.robot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.util.datalog.BooleanLogEntry;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Match recording on a WPILib DataLog, written to the USB stick when one is plugged in and to
+ * /home/lvuser/logs otherwise. Every signal is a fixed type entry created once. Recording a value
+ * only copies it and its timestamp into a preallocated ring. A writer thread appends the ring to the
+ * DataLog, and the DataLog's own thread does the disk writes. When the disk falls behind, the ring
+ * fills up and new values are counted as dropped instead of blocking the caller.
+ *
+ * Values may be recorded from any thread.
+ */
+public final class RobotLog {
+    /* Must be a power of two so the ring index can be masked */
+    public static final int queueSize = 4096;
+    private static final long drainPeriodNanos = 20_000_000;
+
+    private static final Map<String, Signal> signals = new HashMap<>();
+
+    /* Ring of pending records, slots are reused and never reallocated */
+    private static final Signal[] queuedSignals = new Signal[queueSize];
+    private static final long[] queuedTimes = new long[queueSize];
+    private static final double[] queuedNumbers = new double[queueSize];
+    private static final String[] queuedStrings = new String[queueSize];
+    /* Slot i is free for write number t when it holds t, and readable when it holds t + 1 */
+    private static final AtomicLongArray sequences = new AtomicLongArray(queueSize);
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    /* Only touched by the writer thread */
+    private static long head = 0;
+
+    private static DataLog log = null;
+    private static Signal droppedSignal;
+
+    static {
+        for (int i = 0; i < queueSize; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    private RobotLog() {}
+
+    private enum Type {
+        NUMBER, BOOLEAN, STRING
+    }
+
+    /** One named entry in the log, create once and keep it in a field. */
+    public static final class Signal {
+        public final String name;
+        private final Type type;
+        /* Only touched by the writer thread */
+        private DoubleLogEntry numberEntry;
+        private BooleanLogEntry booleanEntry;
+        private StringLogEntry stringEntry;
+
+        private Signal(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public void record(double value) {
+            enqueue(this, value, null);
+        }
+
+        public void record(boolean value) {
+            enqueue(this, value ? 1 : 0, null);
+        }
+
+        public void record(String value) {
+            enqueue(this, 0, value);
+        }
+
+        private void append(DataLog log, long timestamp, double number, String string) {
+            switch (type) {
+                case NUMBER:
+                    if (numberEntry == null) {
+                        numberEntry = new DoubleLogEntry(log, name);
+                    }
+                    numberEntry.append(number, timestamp);
+                    break;
+                case BOOLEAN:
+                    if (booleanEntry == null) {
+                        booleanEntry = new BooleanLogEntry(log, name);
+                    }
+                    booleanEntry.append(number != 0, timestamp);
+                    break;
+                case STRING:
+                    if (stringEntry == null) {
+                        stringEntry = new StringLogEntry(log, name);
+                    }
+                    stringEntry.append(string, timestamp);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Opens the log and starts the writer thread. Values recorded before this are kept as long as
+     * they fit in the queue.
+     */
+    public static synchronized void start() {
+        if (log != null) {
+            return;
+        }
+        DataLogManager.start();
+        /* Everything we want is recorded here, mirroring all of NetworkTables would crowd it out */
+        DataLogManager.logNetworkTables(false);
+        log = DataLogManager.getLog();
+        DriverStation.startDataLog(log);
+        droppedSignal = number("RobotLog/Dropped");
+
+        Thread writerThread = new Thread(RobotLog::writeLoop, "Robot Log");
+        writerThread.setDaemon(true);
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    private static synchronized Signal get(String name, Type type) {
+        Signal signal = signals.get(name);
+        if (signal == null) {
+            signal = new Signal(name, type);
+            signals.put(name, signal);
+        } else if (signal.type != type) {
+            throw new IllegalArgumentException("Log signal " + name + " is already a " + signal.type);
+        }
+        return signal;
+    }
+
+    public static Signal number(String name) {
+        return get(name, Type.NUMBER);
+    }
+
+    public static Signal bool(String name) {
+        return get(name, Type.BOOLEAN);
+    }
+
+    public static Signal string(String name) {
+        return get(name, Type.STRING);
+    }
+
+    /* Producers claim a slot by moving the tail, so none of them ever waits on another */
+    private static void enqueue(Signal signal, double number, String string) {
+        long timestamp = RobotController.getFPGATime();
+        long t = tail.get();
+        while (true) {
+            int index = (int) (t & (queueSize - 1));
+            long sequence = sequences.get(index);
+            if (sequence == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    queuedSignals[index] = signal;
+                    queuedTimes[index] = timestamp;
+                    queuedNumbers[index] = number;
+                    queuedStrings[index] = string;
+                    /* Publishes the slot to the writer thread */
+                    sequences.lazySet(index, t + 1);
+                    return;
+                }
+                t = tail.get();
+            } else if (sequence < t) {
+                /* Still holds a record from the previous lap that hasn't been written */
+                dropped.incrementAndGet();
+                return;
+            } else {
+                /* Another producer took this slot first */
+                t = tail.get();
+            }
+        }
+    }
+
+    /** @return Records dropped because the queue was full */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    private static void writeLoop() {
+        long reportedDropped = 0;
+        while (true) {
+            /* Stops at the first slot not yet published, even if later ones are */
+            int index = (int) (head & (queueSize - 1));
+            while (sequences.get(index) == head + 1) {
+                Signal signal = queuedSignals[index];
+                long timestamp = queuedTimes[index];
+                double number = queuedNumbers[index];
+                String string = queuedStrings[index];
+                queuedStrings[index] = null;
+                /* Free the slot for the next lap before the DataLog call */
+                sequences.lazySet(index, head + queueSize);
+                head++;
+                index = (int) (head & (queueSize - 1));
+                signal.append(log, timestamp, number, string);
+            }
+
+            long currentDropped = getDropped();
+            if (currentDropped != reportedDropped) {
+                reportedDropped = currentDropped;
+                droppedSignal.record(currentDropped);
+            }
+            LockSupport.parkNanos(drainPeriodNanos);
+        }
+    }
+}
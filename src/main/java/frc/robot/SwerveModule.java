@@ -4,54 +4,110 @@ import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.lib.math.Conversions;
 import frc.lib.util.CTREModuleState;
+import frc.lib.util.MutableSwerveModuleState;
 import frc.lib.util.SwerveModuleConstants;
 
+import com.ctre.phoenix.ErrorCode;
 import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.DemandType;
 import com.ctre.phoenix.motorcontrol.can.TalonFX;
 import com.ctre.phoenix.sensors.CANCoder;
 
+import edu.wpi.first.wpilibj.RobotController;
+
 public class SwerveModule {
     public int moduleNumber;
     private Rotation2d angleOffset;
-    private Rotation2d lastAngle;
+    private double lastAngle;
+    private final MutableSwerveModuleState desiredBuffer = new MutableSwerveModuleState();
 
     private TalonFX mAngleMotor;
     private TalonFX mDriveMotor;
     private CANCoder angleEncoder;
 
+    /* Sensor snapshot, refreshed once per loop by refreshSensors() */
+    private double angleDegrees;
+    private double distanceMeters;
+    private double velocityMPS;
+    private double canCoderDegrees;
+
+    /* Keys resolved once, the loop only queues values */
+    private final Telemetry.Entry desiredAngleEntry;
+    private final Telemetry.Entry canCoderEntry;
+    private final Telemetry.Entry integratedEntry;
+    private final Telemetry.Entry velocityEntry;
+
+    private final RobotLog.Signal angleLog;
+    private final RobotLog.Signal velocityLog;
+    private final RobotLog.Signal desiredAngleLog;
+    private final RobotLog.Signal desiredSpeedLog;
+
     SimpleMotorFeedforward feedforward = new SimpleMotorFeedforward(Constants.Swerve.driveKS, Constants.Swerve.driveKV, Constants.Swerve.driveKA);
 
     public SwerveModule(int moduleNumber, SwerveModuleConstants moduleConstants){
         this.moduleNumber = moduleNumber;
         this.angleOffset = moduleConstants.angleOffset;
+
+        desiredAngleEntry = Telemetry.number("Desired Angle Mod " + moduleNumber);
+        canCoderEntry = Telemetry.number("Mod " + moduleNumber + " Cancoder");
+        integratedEntry = Telemetry.number("Mod " + moduleNumber + " Integrated");
+        velocityEntry = Telemetry.number("Mod " + moduleNumber + " Velocity");
+
+        angleLog = RobotLog.number("Swerve/Mod" + moduleNumber + "/Angle");
+        velocityLog = RobotLog.number("Swerve/Mod" + moduleNumber + "/Velocity");
+        desiredAngleLog = RobotLog.number("Swerve/Mod" + moduleNumber + "/DesiredAngle");
+        desiredSpeedLog = RobotLog.number("Swerve/Mod" + moduleNumber + "/DesiredSpeed");
         
-        /* Angle Encoder Config */
         angleEncoder = new CANCoder(moduleConstants.cancoderID);
-        configAngleEncoder();
-
-        /* Angle Motor Config */
         mAngleMotor = new TalonFX(moduleConstants.angleMotorID);
-        configAngleMotor();
-
-        /* Drive Motor Config */
         mDriveMotor = new TalonFX(moduleConstants.driveMotorID);
-        configDriveMotor();
 
-        lastAngle = getState().angle;
+        /* Configured in the background, Swerve resets to absolute once the module is ready */
+        Robot.startup.submit(getStartupName(), this::configure);
+
+        refreshSensors();
+        lastAngle = getAngleDegrees();
+    }
+
+    /**
+     * Reads every sensor on the module once. Call at the start of each loop, every getter below
+     * returns the values from this snapshot so all consumers see the same instant.
+     */
+    public void refreshSensors(){
+        angleDegrees = sampleAngleDegrees();
+        distanceMeters = sampleDistanceMeters();
+        velocityMPS = Conversions.falconToMPS(mDriveMotor.getSelectedSensorVelocity(), Constants.Swerve.wheelCircumference, Constants.Swerve.driveGearRatio);
+        canCoderDegrees = angleEncoder.getAbsolutePosition();
+
+        angleLog.record(angleDegrees);
+        velocityLog.record(velocityMPS);
+    }
+
+    /* Publishes the sensor snapshot */
+    public void publishTelemetry(){
+        canCoderEntry.set(getCanCoderDegrees());
+        integratedEntry.set(getAngleDegrees());
+        velocityEntry.set(getVelocityMPS());
     }
 
     public void setDesiredState(SwerveModuleState desiredState, boolean isOpenLoop){
+        desiredBuffer.steerRateRadiansPerSecond = 0.0;
+        setDesiredState(desiredBuffer.set(desiredState.speedMetersPerSecond, desiredState.angle.getDegrees()), isOpenLoop);
+    }
+
+    /* Allocation-free path, the state is optimized in place */
+    public void setDesiredState(MutableSwerveModuleState desiredState, boolean isOpenLoop){
         /* This is a custom optimize function, since default WPILib optimize assumes continuous controller which CTRE and Rev onboard is not */
-        desiredState = CTREModuleState.optimize(desiredState, getState().angle); 
+        CTREModuleState.optimize(desiredState, getAngleDegrees(), Constants.Swerve.cosineScaleDrive); 
         setAngle(desiredState);
         setSpeed(desiredState, isOpenLoop);
+        desiredAngleLog.record(lastAngle);
+        desiredSpeedLog.record(desiredState.speedMetersPerSecond);
     }
 
-    private void setSpeed(SwerveModuleState desiredState, boolean isOpenLoop){
+    private void setSpeed(MutableSwerveModuleState desiredState, boolean isOpenLoop){
         if(isOpenLoop){
             double percentOutput = desiredState.speedMetersPerSecond / Constants.Swerve.maxSpeed;
             mDriveMotor.set(ControlMode.PercentOutput, percentOutput);
@@ -62,58 +118,128 @@ public class SwerveModule {
         }
     }
 
-    private void setAngle(SwerveModuleState desiredState){
-        Rotation2d angle = (Math.abs(desiredState.speedMetersPerSecond) <= (Constants.Swerve.maxSpeed * 0.01)) ? lastAngle : desiredState.angle; //Prevent rotating module if speed is less then 1%. Prevents Jittering.
+    private void setAngle(MutableSwerveModuleState desiredState){
+        boolean holding = Math.abs(desiredState.speedMetersPerSecond) <= (Constants.Swerve.maxSpeed * 0.01);
+        double angle = holding ? lastAngle : desiredState.angleDegrees; //Prevent rotating module if speed is less then 1%. Prevents Jittering.
+        double steerFeedforward = holding ? 0.0 : desiredState.steerRateRadiansPerSecond * Constants.Swerve.angleKV;
         
-        mAngleMotor.set(ControlMode.Position, Conversions.degreesToFalcon(angle.getDegrees(), Constants.Swerve.angleGearRatio));
+        mAngleMotor.set(ControlMode.Position, Conversions.degreesToFalcon(angle, Constants.Swerve.angleGearRatio), DemandType.ArbitraryFeedForward, steerFeedforward);
         lastAngle = angle;
-        SmartDashboard.putNumber("Desired Angle Mod " + moduleNumber, angle.getDegrees());
+        desiredAngleEntry.set(angle);
+    }
+
+    /** Drives open loop at a voltage with the module pointed straight ahead, for characterization */
+    public void setDriveVoltage(double volts){
+        /* Straight ahead within the current turn, not optimized since that could reverse the drive direction */
+        double angle = CTREModuleState.placeInAppropriate0To360Scope(getAngleDegrees(), 0.0);
+        mAngleMotor.set(ControlMode.Position, Conversions.degreesToFalcon(angle, Constants.Swerve.angleGearRatio));
+        lastAngle = angle;
+        mDriveMotor.set(ControlMode.PercentOutput, volts / RobotController.getBatteryVoltage());
+    }
+
+    public double getDriveVoltage(){
+        return mDriveMotor.getMotorOutputVoltage();
+    }
+
+    /** Replaces the closed loop drive feedforward, gains in volts like SysId reports them */
+    public void setDriveFeedforward(double kS, double kV, double kA){
+        feedforward = new SimpleMotorFeedforward(kS / 12, kV / 12, kA / 12);
     }
 
     private Rotation2d getAngle(){
-        return Rotation2d.fromDegrees(Conversions.falconToDegrees(mAngleMotor.getSelectedSensorPosition(), Constants.Swerve.angleGearRatio));
+        return Rotation2d.fromDegrees(getAngleDegrees());
+    }
+
+    public double getAngleDegrees(){
+        return angleDegrees;
+    }
+
+    public double getDistanceMeters(){
+        return distanceMeters;
+    }
+
+    public double getCanCoderDegrees(){
+        return canCoderDegrees;
     }
 
     public Rotation2d getCanCoder(){
-        return Rotation2d.fromDegrees(angleEncoder.getAbsolutePosition());
+        return Rotation2d.fromDegrees(canCoderDegrees);
+    }
+
+    /* Raw reads that bypass the snapshot, used by the odometry thread */
+    public double sampleAngleDegrees(){
+        return Conversions.falconToDegrees(mAngleMotor.getSelectedSensorPosition(), Constants.Swerve.angleGearRatio);
+    }
+
+    public double sampleDistanceMeters(){
+        return Conversions.falconToMeters(mDriveMotor.getSelectedSensorPosition(), Constants.Swerve.wheelCircumference, Constants.Swerve.driveGearRatio);
     }
 
     public void resetToAbsolute(){
-        double absolutePosition = Conversions.degreesToFalcon(getCanCoder().getDegrees() - angleOffset.getDegrees(), Constants.Swerve.angleGearRatio);
+        double absolutePosition = Conversions.degreesToFalcon(angleEncoder.getAbsolutePosition() - angleOffset.getDegrees(), Constants.Swerve.angleGearRatio);
         mAngleMotor.setSelectedSensorPosition(absolutePosition);
+        angleDegrees = Conversions.falconToDegrees(absolutePosition, Constants.Swerve.angleGearRatio);
+        lastAngle = angleDegrees;
+    }
+
+    public String getStartupName(){
+        return "Swerve Mod " + moduleNumber;
+    }
+
+    /* Runs on a startup thread, returns the first error so the whole module is retried */
+    private ErrorCode configure(){
+        return DeviceStartup.firstError(
+            configAngleEncoder(),
+            configAngleMotor(),
+            configDriveMotor());
     }
 
-    private void configAngleEncoder(){        
-        angleEncoder.configFactoryDefault();
-        angleEncoder.configAllSettings(Robot.ctreConfigs.swerveCanCoderConfig);
+    private ErrorCode configAngleEncoder(){        
+        return DeviceStartup.firstError(
+            angleEncoder.configFactoryDefault(Constants.configTimeoutMs),
+            angleEncoder.configAllSettings(Robot.ctreConfigs.swerveCanCoderConfig, Constants.configTimeoutMs),
+            Robot.ctreConfigs.swerveCanCoderFrames.apply(angleEncoder, "rio"));
     }
 
-    private void configAngleMotor(){
-        mAngleMotor.configFactoryDefault();
-        mAngleMotor.configAllSettings(Robot.ctreConfigs.swerveAngleFXConfig);
+    private ErrorCode configAngleMotor(){
+        ErrorCode error = DeviceStartup.firstError(
+            mAngleMotor.configFactoryDefault(Constants.configTimeoutMs),
+            mAngleMotor.configAllSettings(Robot.ctreConfigs.swerveAngleFXConfig, Constants.configTimeoutMs));
         mAngleMotor.setInverted(Constants.Swerve.angleMotorInvert);
         mAngleMotor.setNeutralMode(Constants.Swerve.angleNeutralMode);
-        resetToAbsolute();
+        return DeviceStartup.firstError(error, Robot.ctreConfigs.swerveAngleFrames.apply(mAngleMotor, "rio"));
     }
 
-    private void configDriveMotor(){        
-        mDriveMotor.configFactoryDefault();
-        mDriveMotor.configAllSettings(Robot.ctreConfigs.swerveDriveFXConfig);
+    private ErrorCode configDriveMotor(){        
+        ErrorCode error = DeviceStartup.firstError(
+            mDriveMotor.configFactoryDefault(Constants.configTimeoutMs),
+            mDriveMotor.configAllSettings(Robot.ctreConfigs.swerveDriveFXConfig, Constants.configTimeoutMs));
         mDriveMotor.setInverted(Constants.Swerve.driveMotorInvert);
         mDriveMotor.setNeutralMode(Constants.Swerve.driveNeutralMode);
-        mDriveMotor.setSelectedSensorPosition(0);
+        return DeviceStartup.firstError(
+            error,
+            Robot.ctreConfigs.swerveDriveFrames.apply(mDriveMotor, "rio"),
+            mDriveMotor.setSelectedSensorPosition(0, 0, Constants.configTimeoutMs));
     }
 
     public SwerveModuleState getState(){
         return new SwerveModuleState(
-            Conversions.falconToMPS(mDriveMotor.getSelectedSensorVelocity(), Constants.Swerve.wheelCircumference, Constants.Swerve.driveGearRatio), 
+            getVelocityMPS(), 
             getAngle()
         ); 
     }
 
+    public MutableSwerveModuleState getState(MutableSwerveModuleState out){
+        return out.set(getVelocityMPS(), getAngleDegrees());
+    }
+
+    public double getVelocityMPS(){
+        return velocityMPS;
+    }
+
     public SwerveModulePosition getPosition(){
         return new SwerveModulePosition(
-            Conversions.falconToMeters(mDriveMotor.getSelectedSensorPosition(), Constants.Swerve.wheelCircumference, Constants.Swerve.driveGearRatio), 
+            getDistanceMeters(), 
             getAngle()
         );
     }
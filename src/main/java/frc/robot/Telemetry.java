@@ -0,0 +1,199 @@
+package frc.robot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+
+/**
+ * Dashboard values published off the control loop. The loop only writes the entry and value into a
+ * preallocated ring; a low priority thread drains it into NetworkTables publishers that were
+ * resolved when the entry was created. Entries live in the SmartDashboard table so existing
+ * dashboard layouts keep working.
+ *
+ * Values may be set from any thread, the same way RobotLog records them.
+ */
+public final class Telemetry {
+    /* Must be a power of two so the ring index can be masked */
+    public static final int queueSize = 1024;
+    private static final long drainPeriodNanos = 10_000_000;
+
+    private static final NetworkTable table = NetworkTableInstance.getDefault().getTable("SmartDashboard");
+    private static final Map<String, Entry> entries = new HashMap<>();
+
+    /* Ring of pending writes, slots are reused and never reallocated */
+    private static final Entry[] queuedEntries = new Entry[queueSize];
+    private static final double[] queuedNumbers = new double[queueSize];
+    private static final Object[] queuedObjects = new Object[queueSize];
+    /* Slot i is free for write number t when it holds t, and readable when it holds t + 1 */
+    private static final AtomicLongArray sequences = new AtomicLongArray(queueSize);
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    /* Only touched by the drain thread */
+    private static long head = 0;
+
+    static {
+        for (int i = 0; i < queueSize; i++) {
+            sequences.set(i, i);
+        }
+        Thread drainThread = new Thread(Telemetry::drainLoop, "Telemetry");
+        drainThread.setDaemon(true);
+        drainThread.setPriority(Thread.MIN_PRIORITY);
+        drainThread.start();
+    }
+
+    private Telemetry() {}
+
+    private enum Type {
+        NUMBER, BOOLEAN, NUMBER_ARRAY, STRING
+    }
+
+    /** One dashboard key with its publisher, create once and keep it in a field. */
+    public static final class Entry {
+        public final String key;
+        private final Type type;
+        private DoublePublisher numberPublisher;
+        private BooleanPublisher booleanPublisher;
+        private DoubleArrayPublisher numberArrayPublisher;
+        private StringPublisher stringPublisher;
+
+        private Entry(String key, Type type) {
+            this.key = key;
+            this.type = type;
+            switch (type) {
+                case NUMBER:
+                    numberPublisher = table.getDoubleTopic(key).publish();
+                    break;
+                case BOOLEAN:
+                    booleanPublisher = table.getBooleanTopic(key).publish();
+                    break;
+                case NUMBER_ARRAY:
+                    numberArrayPublisher = table.getDoubleArrayTopic(key).publish();
+                    break;
+                case STRING:
+                    stringPublisher = table.getStringTopic(key).publish();
+                    break;
+            }
+        }
+
+        public void set(double value) {
+            enqueue(this, value, null);
+        }
+
+        public void set(boolean value) {
+            enqueue(this, value ? 1 : 0, null);
+        }
+
+        /** The array is published later, don't modify it after passing it in */
+        public void set(double[] value) {
+            enqueue(this, 0, value);
+        }
+
+        public void set(String value) {
+            enqueue(this, 0, value);
+        }
+
+        private void publish(double number, Object object) {
+            switch (type) {
+                case NUMBER:
+                    numberPublisher.set(number);
+                    break;
+                case BOOLEAN:
+                    booleanPublisher.set(number != 0);
+                    break;
+                case NUMBER_ARRAY:
+                    numberArrayPublisher.set((double[]) object);
+                    break;
+                case STRING:
+                    stringPublisher.set((String) object);
+                    break;
+            }
+        }
+    }
+
+    private static synchronized Entry get(String key, Type type) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, type);
+            entries.put(key, entry);
+        } else if (entry.type != type) {
+            throw new IllegalArgumentException("Telemetry key " + key + " is already a " + entry.type);
+        }
+        return entry;
+    }
+
+    public static Entry number(String key) {
+        return get(key, Type.NUMBER);
+    }
+
+    public static Entry bool(String key) {
+        return get(key, Type.BOOLEAN);
+    }
+
+    public static Entry numberArray(String key) {
+        return get(key, Type.NUMBER_ARRAY);
+    }
+
+    public static Entry string(String key) {
+        return get(key, Type.STRING);
+    }
+
+    /* Producers claim a slot by moving the tail, so none of them ever waits on another */
+    private static void enqueue(Entry entry, double number, Object object) {
+        long t = tail.get();
+        while (true) {
+            int index = (int) (t & (queueSize - 1));
+            long sequence = sequences.get(index);
+            if (sequence == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    queuedEntries[index] = entry;
+                    queuedNumbers[index] = number;
+                    queuedObjects[index] = object;
+                    /* Publishes the slot to the drain thread */
+                    sequences.lazySet(index, t + 1);
+                    return;
+                }
+                t = tail.get();
+            } else if (sequence < t) {
+                /* Still holds a write from the previous lap that hasn't been drained */
+                dropped.incrementAndGet();
+                return;
+            } else {
+                /* Another producer took this slot first */
+                t = tail.get();
+            }
+        }
+    }
+
+    /** @return Writes dropped because the queue was full */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            /* Stops at the first slot not yet published, even if later ones are */
+            int index = (int) (head & (queueSize - 1));
+            while (sequences.get(index) == head + 1) {
+                Entry entry = queuedEntries[index];
+                double number = queuedNumbers[index];
+                Object object = queuedObjects[index];
+                queuedObjects[index] = null;
+                /* Free the slot for the next lap before the NetworkTables call */
+                sequences.lazySet(index, head + queueSize);
+                head++;
+                index = (int) (head & (queueSize - 1));
+                entry.publish(number, object);
+            }
+            LockSupport.parkNanos(drainPeriodNanos);
+        }
+    }
+}
@@ -10,27 +10,24 @@ import java.util.HashMap;
 import com.pathplanner.lib.PathConstraints;
 import com.pathplanner.lib.PathPlanner;
 import com.pathplanner.lib.PathPlannerTrajectory;
-import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
-import com.pathplanner.lib.commands.FollowPathWithEvents;
 import com.pathplanner.lib.commands.PPSwerveControllerCommand;
 
-import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.trajectory.Trajectory;
 import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
-import edu.wpi.first.wpilibj2.command.SwerveControllerCommand;
+import frc.lib.trajectory.CompiledTrajectory;
 import frc.robot.Constants;
 import frc.robot.Dashboard;
+import frc.robot.Robot;
 import frc.robot.Constants.AutoConstants;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.Presets;
+import frc.robot.commands.FollowTrajectory;
 import frc.robot.commands.HomeElevator;
 import frc.robot.commands.IntakePiece;
 import frc.robot.commands.Macros;
@@ -105,7 +102,7 @@ public final class AutoRoutines {
   // WORK IN PROGRESS
   public CommandBase chargingStation() {
 
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("charge_station_P1", 2.5, 3);
+    CompiledTrajectory trajectory = loadPath("charge_station_P1", AutoConstants.kFastPath);
     // PathPlannerTrajectory trajectory2 = PathPlanner.loadPath("charge_station_P2", 2.5, 3);
 
     return Commands.sequence(
@@ -119,14 +116,14 @@ public final class AutoRoutines {
   }
 
   public CommandBase blueConeCubeAuto() {
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("Left_Cone_Cube_Auto", 1.5, 1.75);
+    CompiledTrajectory trajectory = loadPath("Left_Cone_Cube_Auto", AutoConstants.kSlowPath);
 
     HashMap<String, Command> eventMap = new HashMap<>();
     eventMap.put("intakeDown", macros.setCubeMode().andThen(macros.cubeGroundIntake()).andThen(macros.intake()));
     eventMap.put("stow", macros.stow());
     eventMap.put("prepareScore", macros.cube3rdStage());
 
-    FollowPathWithEvents grabConeAndPrepareToScore = new FollowPathWithEvents(
+    FollowPathWithMarkers grabConeAndPrepareToScore = new FollowPathWithMarkers(
       baseSwerveCommand(trajectory, true), 
       trajectory.getMarkers(), 
       eventMap);
@@ -140,15 +137,14 @@ public final class AutoRoutines {
   }
 
   public CommandBase redConeCubeAuto() {
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("Left_Cone_Cube_Auto", 1.5, 1.75);
-    trajectory = PathPlannerTrajectory.transformTrajectoryForAlliance(trajectory, DriverStation.Alliance.Red);
+    CompiledTrajectory trajectory = loadPath("Left_Cone_Cube_Auto", AutoConstants.kSlowPath, DriverStation.Alliance.Red);
 
     HashMap<String, Command> eventMap = new HashMap<>();
     eventMap.put("intakeDown", macros.setCubeMode().andThen(macros.cubeGroundIntake()).andThen(macros.intake()));
     eventMap.put("stow", macros.stow());
     eventMap.put("prepareScore", macros.cube3rdStage());
 
-    FollowPathWithEvents grabConeAndPrepareToScore = new FollowPathWithEvents(
+    FollowPathWithMarkers grabConeAndPrepareToScore = new FollowPathWithMarkers(
       baseSwerveCommand(trajectory, true), 
       trajectory.getMarkers(), 
       eventMap);
@@ -163,7 +159,7 @@ public final class AutoRoutines {
 
   public CommandBase coneChargingStation() {
 
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("charge_station_P1", 2.5, 3);
+    CompiledTrajectory trajectory = loadPath("charge_station_P1", AutoConstants.kFastPath);
     // PathPlannerTrajectory trajectory2 = PathPlanner.loadPath("charge_station_P2", 2.5, 3);
 
     return Commands.sequence(
@@ -176,7 +172,7 @@ public final class AutoRoutines {
 
   public CommandBase cube3rdMobilityRight() {
 
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("1_Cube_Mobility_Right", 2.5, 3);
+    CompiledTrajectory trajectory = loadPath("1_Cube_Mobility_Right", AutoConstants.kFastPath);
 
     return Commands.sequence(
       cube3rdAuto(),
@@ -187,7 +183,7 @@ public final class AutoRoutines {
 
   public CommandBase cube3rdMobilityLeft() {
 
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("1_Cube_Mobility_Left", 2.5, 3);
+    CompiledTrajectory trajectory = loadPath("1_Cube_Mobility_Left", AutoConstants.kFastPath);
 
     return Commands.sequence(
       cube3rdAuto(),
@@ -230,7 +226,7 @@ public final class AutoRoutines {
   }
 
   public CommandBase Cone3rdBalance() {
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("charge_station_P1", 2.5, 3);
+    CompiledTrajectory trajectory = loadPath("charge_station_P1", AutoConstants.kFastPath);
 
     return Commands.sequence(
       cone3rdAuto(),
@@ -240,7 +236,7 @@ public final class AutoRoutines {
   }
 
   public CommandBase Cube2ndBalance() {
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("charge_station_P1", 2.5, 3);
+    CompiledTrajectory trajectory = loadPath("charge_station_P1", AutoConstants.kFastPath);
 
     return Commands.sequence(
       cube2ndAuto(),
@@ -263,8 +259,8 @@ public final class AutoRoutines {
   }
 
   public CommandBase twoCubeAuto() {
-    PathPlannerTrajectory trajectory = PathPlanner.loadPath("Left_2Cube_P1", 2.0, 2.75);
-    PathPlannerTrajectory trajectory2 = PathPlanner.loadPath("Left_2Cube_P2", 2.5, 2.75);
+    CompiledTrajectory trajectory = loadPath("Left_2Cube_P1", AutoConstants.kPickupPath);
+    CompiledTrajectory trajectory2 = loadPath("Left_2Cube_P2", AutoConstants.kReturnPath);
     
     return Commands.sequence(
       macros.home(),
@@ -283,53 +279,31 @@ public final class AutoRoutines {
     );
   }
 
-  public Command baseSwerveCommand(PathPlannerTrajectory trajectory, boolean isFirstPath) {
+  /** @return Trajectory compiled at build time, generated on the RIO only if its file is missing */
+  private CompiledTrajectory loadPath(String name, PathConstraints constraints) {
+    return loadPath(name, constraints, DriverStation.Alliance.Blue);
+  }
+
+  private CompiledTrajectory loadPath(String name, PathConstraints constraints, DriverStation.Alliance alliance) {
+    CompiledTrajectory trajectory = Robot.trajectories.getCompiled(name, constraints, alliance);
+    if (trajectory == null) {
+      DriverStation.reportWarning("Generating " + name + " on the RIO, deploy again to compile it", false);
+      trajectory = CompiledTrajectory.fromTrajectory(Robot.trajectories.get(name, constraints, alliance));
+    }
+    return trajectory;
+  }
+
+  /** Follows a trajectory compiled at build time, sampled in place from the mapped file. */
+  public Command baseSwerveCommand(CompiledTrajectory trajectory, boolean isFirstPath) {
     InstantCommand resetOdom = new InstantCommand(() -> {
       if(isFirstPath) {
         swerve.resetOdometry(trajectory.getInitialHolonomicPose());
       }
     }, swerve);
 
-    var thetaController = new ProfiledPIDController(
-          Constants.AutoConstants.kPThetaController, 0, 0, Constants.AutoConstants.kThetaControllerConstraints);
-          thetaController.enableContinuousInput(-Math.PI, Math.PI);
-
-    SwerveControllerCommand swerveControllerCommand = new SwerveControllerCommand(
-          trajectory,
-          swerve::getPose,
-          Constants.Swerve.swerveKinematics,
-          new PIDController(Constants.AutoConstants.kPXController, 0, 0),
-          new PIDController(Constants.AutoConstants.kPYController, 0, 0),
-          thetaController,
-          swerve::setModuleStates,
-          swerve);
-
-    Timer timer = new Timer();
-    SmartDashboard.putNumber("Desired X", 0);
-          SmartDashboard.putNumber("Desired Y", 0);
-          SmartDashboard.putNumber("Desired R", 0);
-          SmartDashboard.putNumber("Error X", 0);
-          SmartDashboard.putNumber("Error Y", 0);
-          SmartDashboard.putNumber("Error R", 0);
-
     return Commands.sequence(
-      resetOdom.andThen(Commands.runOnce(
-        () -> {
-          timer.reset();
-          timer.start();
-        })), 
-        swerveControllerCommand.raceWith(
-        Commands.run(() -> {
-          double t = timer.get();
-          PathPlannerState state = (PathPlannerState) trajectory.sample(t);
-          SmartDashboard.putNumber("Desired X", state.poseMeters.getX());
-          SmartDashboard.putNumber("Desired Y", state.poseMeters.getY());
-          SmartDashboard.putNumber("Desired R", state.poseMeters.getRotation().getRadians());
-          SmartDashboard.putNumber("Error X", state.poseMeters.getX() - swerve.getPose().getX());
-          SmartDashboard.putNumber("Error Y", state.poseMeters.getY() - swerve.getPose().getY());
-          SmartDashboard.putNumber("Error R", state.poseMeters.getRotation().getRadians() - swerve.getPose().getRotation().getRadians());
-        })
-      ), 
+      resetOdom,
+      new FollowTrajectory(swerve, trajectory),
       Commands.runOnce(() -> SmartDashboard.putString("Path Ended", "yes")));
   }
 
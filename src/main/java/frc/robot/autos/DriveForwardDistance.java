@@ -14,14 +14,18 @@ public class DriveForwardDistance extends CommandBase {
   private final Swerve swerve;
   private double distance;
   private double start;
+
+  private final Dashboard.NumberEntry startEntry = Dashboard.Tele.Debugging.number("Start X");
+  private final Dashboard.NumberEntry currentEntry = Dashboard.Tele.Debugging.number("Current X");
+  private final Dashboard.NumberEntry distanceEntry = Dashboard.Tele.Debugging.number("Distance Travelled");
   public DriveForwardDistance(Swerve swerve, double distance) {
     this.swerve = swerve;
     this.distance = distance;
     start = swerve.getPose().getX();
     addRequirements(swerve);
-    Dashboard.Tele.Debugging.putNumber("Start X", start);
-    Dashboard.Tele.Debugging.putNumber("Current X", swerve.getPose().getX());
-    Dashboard.Tele.Debugging.putNumber("Distance Travelled", swerve.getPose().getX() - start);
+    startEntry.set(start);
+    currentEntry.set(swerve.getPose().getX());
+    distanceEntry.set(swerve.getPose().getX() - start);
     // Use addRequirements() here to declare subsystem dependencies.
   }
 
@@ -34,9 +38,9 @@ public class DriveForwardDistance extends CommandBase {
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    Dashboard.Tele.Debugging.putNumber("Start X", start);
-    Dashboard.Tele.Debugging.putNumber("Current X", swerve.getPose().getX());
-    Dashboard.Tele.Debugging.putNumber("Distance Travelled", swerve.getPose().getX() - start);
+    startEntry.set(start);
+    currentEntry.set(swerve.getPose().getX());
+    distanceEntry.set(swerve.getPose().getX() - start);
     swerve.drive(new Translation2d(1, 0), 0, true, true); //?????
   }
 
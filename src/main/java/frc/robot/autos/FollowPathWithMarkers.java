@@ -0,0 +1,115 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.autos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.lib.trajectory.CompiledTrajectory;
+
+/**
+ * PathPlanner's FollowPathWithEvents for the markers of a compiled trajectory, which it can't take
+ * since they aren't PathPlanner EventMarkers. Behaves the same: at each marker's time the commands
+ * for its names start alongside the path, interrupting any running command they share a subsystem
+ * with, and the whole thing ends when the path does, interrupting events still running.
+ */
+public class FollowPathWithMarkers extends CommandBase {
+
+  private final Command pathFollowingCommand;
+  private final List<CompiledTrajectory.Marker> markers;
+  private final Map<String, Command> eventMap;
+  private final Timer timer = new Timer();
+
+  /* Value is false once the command has ended */
+  private final Map<Command, Boolean> currentCommands = new LinkedHashMap<>();
+  private final List<CompiledTrajectory.Marker> unpassedMarkers = new ArrayList<>();
+  private boolean isFinished = true;
+
+  public FollowPathWithMarkers(Command pathFollowingCommand, List<CompiledTrajectory.Marker> markers, Map<String, Command> eventMap) {
+    this.pathFollowingCommand = pathFollowingCommand;
+    this.markers = markers;
+    this.eventMap = eventMap;
+
+    m_requirements.addAll(pathFollowingCommand.getRequirements());
+    for (CompiledTrajectory.Marker marker : markers) {
+      for (String name : marker.names) {
+        if (eventMap.containsKey(name)) {
+          m_requirements.addAll(eventMap.get(name).getRequirements());
+        }
+      }
+    }
+  }
+
+  @Override
+  public void initialize() {
+    isFinished = false;
+    currentCommands.clear();
+    unpassedMarkers.clear();
+    unpassedMarkers.addAll(markers);
+    timer.reset();
+    timer.start();
+
+    pathFollowingCommand.initialize();
+    currentCommands.put(pathFollowingCommand, true);
+  }
+
+  @Override
+  public void execute() {
+    for (Map.Entry<Command, Boolean> running : currentCommands.entrySet()) {
+      if (!running.getValue()) {
+        continue;
+      }
+      running.getKey().execute();
+      if (running.getKey().isFinished()) {
+        running.getKey().end(false);
+        running.setValue(false);
+        if (running.getKey() == pathFollowingCommand) {
+          isFinished = true;
+        }
+      }
+    }
+
+    double time = timer.get();
+    while (!unpassedMarkers.isEmpty() && time >= unpassedMarkers.get(0).timeSeconds) {
+      CompiledTrajectory.Marker marker = unpassedMarkers.remove(0);
+      for (String name : marker.names) {
+        Command eventCommand = eventMap.get(name);
+        if (eventCommand == null) {
+          continue;
+        }
+        for (Map.Entry<Command, Boolean> running : currentCommands.entrySet()) {
+          if (running.getValue() && !Collections.disjoint(running.getKey().getRequirements(), eventCommand.getRequirements())) {
+            running.getKey().end(true);
+            running.setValue(false);
+          }
+        }
+        eventCommand.initialize();
+        currentCommands.put(eventCommand, true);
+      }
+    }
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    timer.stop();
+    for (Map.Entry<Command, Boolean> running : currentCommands.entrySet()) {
+      if (running.getValue()) {
+        running.getKey().end(true);
+        running.setValue(false);
+      }
+    }
+  }
+
+  @Override
+  public boolean isFinished() {
+    return isFinished;
+  }
+}
@@ -0,0 +1,181 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.autos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.pathplanner.lib.PathConstraints;
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
+import frc.lib.trajectory.CompiledTrajectory;
+
+/**
+ * Trajectories for the autos. The ones compiled at build time are mapped from the deploy directory
+ * with getCompiled(). When none were deployed, every PathPlanner path can instead be generated
+ * once at startup, in the background, for each constraint set and both alliances, so starting an
+ * auto only looks them up.
+ */
+public class TrajectoryCache {
+
+  private static final int threads = 4;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+    Thread thread = new Thread(runnable, "Trajectory Cache");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+  private final Map<Key, CompletableFuture<PathPlannerTrajectory>> trajectories = new HashMap<>();
+  private final Map<Key, CompiledTrajectory> compiled = new HashMap<>();
+
+  /** Identifies one generated trajectory. */
+  private static final class Key {
+    final String name;
+    final double maxVelocity;
+    final double maxAcceleration;
+    final Alliance alliance;
+
+    Key(String name, PathConstraints constraints, Alliance alliance) {
+      this.name = name;
+      this.maxVelocity = constraints.maxVelocity;
+      this.maxAcceleration = constraints.maxAcceleration;
+      this.alliance = alliance;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return name.equals(key.name) && maxVelocity == key.maxVelocity
+          && maxAcceleration == key.maxAcceleration && alliance == key.alliance;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = name.hashCode();
+      hash = 31 * hash + Double.hashCode(maxVelocity);
+      hash = 31 * hash + Double.hashCode(maxAcceleration);
+      return 31 * hash + alliance.hashCode();
+    }
+  }
+
+  /**
+   * Starts generating every .path file in deploy/pathplanner with each constraint set, returns right away.
+   * @return Completes when every trajectory has been generated
+   */
+  public CompletableFuture<Void> preloadAll(PathConstraints... constraintSets) {
+    File[] files = new File(Filesystem.getDeployDirectory(), "pathplanner").listFiles((dir, name) -> name.endsWith(".path"));
+    if (files == null) {
+      DriverStation.reportWarning("No pathplanner directory to preload", false);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    double start = Timer.getFPGATimestamp();
+    CompletableFuture<?>[] loads = new CompletableFuture<?>[files.length * constraintSets.length * 2];
+    int i = 0;
+    for (File file : files) {
+      String name = file.getName().substring(0, file.getName().length() - ".path".length());
+      for (PathConstraints constraints : constraintSets) {
+        loads[i++] = load(name, constraints, Alliance.Blue);
+        loads[i++] = load(name, constraints, Alliance.Red);
+      }
+    }
+    return CompletableFuture.allOf(loads).whenComplete((result, e) -> System.out.println(String.format(
+        "Generated %d trajectories in %.2f s", loads.length, Timer.getFPGATimestamp() - start)));
+  }
+
+  /* Only queues the work, generation runs on the cache threads */
+  private synchronized CompletableFuture<PathPlannerTrajectory> load(String name, PathConstraints constraints, Alliance alliance) {
+    Key key = new Key(name, constraints, alliance);
+    CompletableFuture<PathPlannerTrajectory> trajectory = trajectories.get(key);
+    if (trajectory == null) {
+      if (alliance == Alliance.Blue) {
+        trajectory = CompletableFuture.supplyAsync(() -> PathPlanner.loadPath(name, constraints), executor);
+      } else {
+        /* The red variant is mirrored from the blue one instead of generated again */
+        trajectory = load(name, constraints, Alliance.Blue).thenApplyAsync(
+            blue -> blue == null ? null : PathPlannerTrajectory.transformTrajectoryForAlliance(blue, alliance), executor);
+      }
+      trajectories.put(key, trajectory);
+    }
+    return trajectory;
+  }
+
+  /**
+   * Waits for the trajectory if it is still being generated, and generates it now if it was not preloaded.
+   * @return Blue alliance trajectory, or null if the path does not exist
+   */
+  public PathPlannerTrajectory get(String name, PathConstraints constraints) {
+    return get(name, constraints, Alliance.Blue);
+  }
+
+  /** @return Trajectory transformed for the alliance, or null if the path does not exist */
+  public PathPlannerTrajectory get(String name, PathConstraints constraints, Alliance alliance) {
+    if (alliance != Alliance.Red) {
+      alliance = Alliance.Blue;
+    }
+    return load(name, constraints, alliance).join();
+  }
+
+  /** @return true if compilePaths deployed compiled trajectories, so nothing needs generating at startup */
+  public boolean hasCompiled() {
+    File[] files = new File(Filesystem.getDeployDirectory(), "pathplanner/compiled")
+        .listFiles((dir, name) -> name.endsWith(CompiledTrajectory.extension));
+    return files != null && files.length > 0;
+  }
+
+  /**
+   * Maps the trajectory compiled at build time by compilePaths, see TrajectoryCompiler.
+   * @return Trajectory mirrored for the alliance, or null if it was not compiled
+   */
+  public synchronized CompiledTrajectory getCompiled(String name, PathConstraints constraints, Alliance alliance) {
+    if (alliance != Alliance.Red) {
+      alliance = Alliance.Blue;
+    }
+    Key key = new Key(name, constraints, alliance);
+    CompiledTrajectory trajectory = compiled.get(key);
+    if (trajectory == null) {
+      if (alliance == Alliance.Red) {
+        CompiledTrajectory blue = getCompiled(name, constraints, Alliance.Blue);
+        trajectory = blue == null ? null : blue.mirrored();
+      } else {
+        Path file = Filesystem.getDeployDirectory().toPath().resolve("pathplanner/compiled").resolve(TrajectoryCompiler.fileName(name, constraints));
+        try {
+          trajectory = CompiledTrajectory.load(file);
+        } catch (IOException e) {
+          DriverStation.reportError("Could not load compiled trajectory " + file + ": " + e.getMessage(), false);
+        }
+      }
+      if (trajectory != null) {
+        compiled.put(key, trajectory);
+      }
+    }
+    return trajectory;
+  }
+
+  /** @return Blue alliance compiled trajectory, or null if it was not compiled */
+  public CompiledTrajectory getCompiled(String name, PathConstraints constraints) {
+    return getCompiled(name, constraints, Alliance.Blue);
+  }
+
+  /** @return Trajectory for the alliance currently reported by the driver station */
+  public PathPlannerTrajectory getForCurrentAlliance(String name, PathConstraints constraints) {
+    return get(name, constraints, DriverStation.getAlliance());
+  }
+}
@@ -0,0 +1,60 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.autos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import com.pathplanner.lib.PathConstraints;
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.lib.trajectory.CompiledTrajectory;
+import frc.robot.Constants.AutoConstants;
+
+/**
+ * Build time entry point for the compilePaths Gradle task. Generates every .path file in the deploy
+ * directory with each constraint set in AutoConstants.kPathConstraints and writes them as compiled
+ * trajectories, which are deployed to deploy/pathplanner/compiled.
+ */
+public final class TrajectoryCompiler {
+
+  private TrajectoryCompiler() {}
+
+  /** @return File name of a compiled path, shared by the compiler and the loader */
+  public static String fileName(String name, PathConstraints constraints) {
+    return String.format(Locale.ROOT, "%s_%.2f_%.2f%s", name, constraints.maxVelocity, constraints.maxAcceleration, CompiledTrajectory.extension);
+  }
+
+  /** @param args Output directory */
+  public static void main(String[] args) throws IOException {
+    Path output = Paths.get(args.length > 0 ? args[0] : "build/compiledPaths");
+    Files.createDirectories(output);
+
+    File[] files = new File(Filesystem.getDeployDirectory(), "pathplanner").listFiles((dir, name) -> name.endsWith(".path"));
+    if (files == null) {
+      throw new IOException("No pathplanner directory in " + Filesystem.getDeployDirectory());
+    }
+
+    int compiled = 0;
+    for (File file : files) {
+      String name = file.getName().substring(0, file.getName().length() - ".path".length());
+      for (PathConstraints constraints : AutoConstants.kPathConstraints) {
+        PathPlannerTrajectory trajectory = PathPlanner.loadPath(name, constraints);
+        if (trajectory == null) {
+          throw new IOException("Could not generate " + file);
+        }
+        CompiledTrajectory.write(trajectory, output.resolve(fileName(name, constraints)));
+        compiled++;
+      }
+    }
+    System.out.println("Compiled " + compiled + " trajectories to " + output.toAbsolutePath());
+  }
+}
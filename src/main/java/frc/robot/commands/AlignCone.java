@@ -28,6 +28,13 @@ public class AlignCone extends CommandBase {
   private final double targetXDist;
   private final double targetYDist;
 
+  private final Dashboard.NumberEntry currentXDistEntry = Dashboard.Tele.Debugging.number("currentxdist");
+  private final Dashboard.NumberEntry currentYDistEntry = Dashboard.Tele.Debugging.number("currentydist");
+  private final Dashboard.NumberEntry xSpeedEntry = Dashboard.Tele.Debugging.number("xspeed");
+  private final Dashboard.NumberEntry ySpeedEntry = Dashboard.Tele.Debugging.number("yspeed");
+  private final Dashboard.NumberEntry xDistanceEntry = Dashboard.Tele.Debugging.number("xdistance");
+  private final Dashboard.NumberEntry yDistanceEntry = Dashboard.Tele.Debugging.number("ydistance");
+
   double xspeed;
   double yspeed;
   double minxspeed;
@@ -43,6 +50,10 @@ public class AlignCone extends CommandBase {
   double currentXdistance;
   double currentYdistance;
 
+  Limelight.PipelineLease lease;
+  long lastFrame;
+  boolean measured; //false until a frame from the retroreflective pipeline has been used
+
   public AlignCone(Swerve swerveSubsystem, Limelight camera, double targetXDist, double targetYDist, double targetR) { //meters, meters, degrees
     this.targetXDist = targetXDist; //positive forward
     this.targetYDist = targetYDist; //positive when robot to the right
@@ -60,6 +71,11 @@ public class AlignCone extends CommandBase {
     rcontroller.setTolerance(LimelightConstants.rtolerance);
     ydistreached = false;
     xdistreached = false;
+    lease = camera.acquirePipeline(1);
+    lastFrame = camera.getFrameSequence() - 1;
+    measured = false;
+    xspeed = 0;
+    yspeed = 0;
     /* 
     if (swerveSubsystem.getFieldOriented()){
       swerveSubsystem.toggleField();
@@ -69,8 +85,17 @@ public class AlignCone extends CommandBase {
 
   @Override
   public void execute() {
-    double currentYAngle = camera.getRTTX(); //-, limelight and swerve directions swapped, ref frame (robot to the right +)
-    double currentXAngle = camera.getRTTY(); 
+    //hold the last output until a new frame arrives from our pipeline, frames right after a switch are from the old one
+    Limelight.VisionFrame frame = camera.getFrame();
+    if (frame.sequence == lastFrame || !lease.owns(frame)) {
+      swerveSubsystem.drive(new Translation2d(xspeed, yspeed), 0, false, true);
+      return;
+    }
+    lastFrame = frame.sequence;
+    measured = true;
+
+    double currentYAngle = frame.tx; //-, limelight and swerve directions swapped, ref frame (robot to the right +)
+    double currentXAngle = frame.ty; 
 
     currentXdistance = (LimelightConstants.RTheight - LimelightConstants.cameraheight)/Math.tan(currentXAngle*Math.PI/180); //radians
     currentYdistance = Math.tan(currentYAngle*Math.PI/180) * currentXdistance; //+
@@ -100,17 +125,17 @@ public class AlignCone extends CommandBase {
       yspeed = 0;
     }
     
-    Dashboard.Tele.Debugging.putNumber("currentxdist", currentXdistance);
-    Dashboard.Tele.Debugging.putNumber("currentydist", currentYdistance);
+    currentXDistEntry.set(currentXdistance);
+    currentYDistEntry.set(currentYdistance);
 
-    Dashboard.Tele.Debugging.putNumber("xspeed", xspeed);
-    Dashboard.Tele.Debugging.putNumber("yspeed", yspeed);
+    xSpeedEntry.set(xspeed);
+    ySpeedEntry.set(yspeed);
 
     //Dashboard.Tele.Debugging.putNumber("xerror", targetXAngle-currentXAngle);
     //Dashboard.Tele.Debugging.putNumber("yerror", targetYAngle-currentYAngle);
     
-    Dashboard.Tele.Debugging.putNumber("xdistance", currentXdistance);
-    Dashboard.Tele.Debugging.putNumber("ydistance", currentYdistance);
+    xDistanceEntry.set(currentXdistance);
+    yDistanceEntry.set(currentYdistance);
 
 
     atSetpoint = (xcontroller.atSetpoint() && ycontroller.atSetpoint() && rcontroller.atSetpoint());
@@ -121,12 +146,13 @@ public class AlignCone extends CommandBase {
 
   @Override
   public void end(boolean interrupted) {
+    lease.release();
     swerveSubsystem.stopModules();
   }
 
   @Override
   public boolean isFinished() {
-    return ((Math.abs(targetXDist - currentXdistance) < LimelightConstants.xtolerance) ||
+    return measured && ((Math.abs(targetXDist - currentXdistance) < LimelightConstants.xtolerance) ||
       (Math.abs(targetYDist - currentYdistance) < LimelightConstants.ytolerance) ||
       (xspeed == 0 && yspeed == 0));
   }
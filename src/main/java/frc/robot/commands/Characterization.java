@@ -0,0 +1,385 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.lib.math.FeedforwardFit;
+import frc.robot.RobotLog;
+import frc.robot.Telemetry;
+import frc.robot.Constants.CharacterizationConstants;
+import frc.robot.Constants.ElevatorConstants;
+import frc.robot.Constants.NewArmConstants;
+import frc.robot.subsystems.ArmSubsystem;
+import frc.robot.subsystems.ProfiledPIDElevator;
+import frc.robot.subsystems.Swerve;
+
+/**
+ * SysId style characterization run on the robot. A mechanism goes through a quasistatic ramp and a
+ * dynamic step in each direction. Every loop the applied voltage, position and velocity are recorded
+ * under SysId/name in the RobotLog and added to a FeedforwardFit. After the last test the fit is
+ * solved, published, and saved as the mechanism's feedforward gains if it came out sound. The log
+ * holds everything needed to redo the fit offline.
+ */
+public final class Characterization {
+  private Characterization() {}
+
+  /** What the tests need from a mechanism, in the units its gains are in */
+  public interface Mechanism {
+    String getName();
+
+    Subsystem getSubsystem();
+
+    void setVoltage(double volts);
+
+    double getAppliedVoltage();
+
+    double getPosition();
+
+    double getVelocity();
+
+    /** @return false for a mechanism gravity doesn't act on */
+    boolean hasGravity();
+
+    /** @return g(x), what kG is multiplied by at a position */
+    double getGravityBasis(double position);
+
+    /** @return false once going further in the direction would run past a limit */
+    boolean canMove(double position, double direction);
+
+    void stop();
+
+    void save(FeedforwardFit fit);
+  }
+
+  /** One quasistatic or dynamic test in one direction, adding its samples to a shared fit. */
+  public static class Test extends CommandBase {
+    private final Mechanism mechanism;
+    private final FeedforwardFit fit;
+    private final boolean quasistatic;
+    private final double direction;
+    private final double rampRate;
+    private final double stepVoltage;
+    private final double timeout;
+    private final String testName;
+    private final Timer timer = new Timer();
+
+    private final RobotLog.Signal voltageLog;
+    private final RobotLog.Signal positionLog;
+    private final RobotLog.Signal velocityLog;
+    private final RobotLog.Signal testLog;
+
+    private double lastVelocity;
+    private double lastTime;
+    private boolean hasLast;
+
+    /**
+     * @param quasistatic true for a voltage ramp, false for a voltage step
+     * @param direction 1 or -1
+     * @param rampRate Volts per second
+     * @param stepVoltage Volts
+     */
+    public Test(Mechanism mechanism, FeedforwardFit fit, boolean quasistatic, double direction, double rampRate, double stepVoltage) {
+      this.mechanism = mechanism;
+      this.fit = fit;
+      this.quasistatic = quasistatic;
+      this.direction = Math.signum(direction);
+      this.rampRate = rampRate;
+      this.stepVoltage = stepVoltage;
+      this.timeout = quasistatic ? CharacterizationConstants.kQuasistaticTimeout : CharacterizationConstants.kDynamicTimeout;
+      this.testName = (quasistatic ? "quasistatic" : "dynamic") + (direction > 0 ? "-forward" : "-reverse");
+
+      String prefix = "SysId/" + mechanism.getName() + "/";
+      voltageLog = RobotLog.number(prefix + "Voltage");
+      positionLog = RobotLog.number(prefix + "Position");
+      velocityLog = RobotLog.number(prefix + "Velocity");
+      testLog = RobotLog.string(prefix + "Test");
+      addRequirements(mechanism.getSubsystem());
+    }
+
+    @Override
+    public void initialize() {
+      hasLast = false;
+      testLog.record(testName);
+      timer.reset();
+      timer.start();
+    }
+
+    @Override
+    public void execute() {
+      double now = Timer.getFPGATimestamp();
+      double volts = mechanism.getAppliedVoltage();
+      double position = mechanism.getPosition();
+      double velocity = mechanism.getVelocity();
+      voltageLog.record(volts);
+      positionLog.record(position);
+      velocityLog.record(velocity);
+
+      /* Acceleration is differenced from the previous loop, so the first sample of a test only seeds it */
+      if (hasLast && now - lastTime > 1e-3 && Math.abs(velocity) >= CharacterizationConstants.kMinVelocity) {
+        double acceleration = (velocity - lastVelocity) / (now - lastTime);
+        fit.addSample(volts, mechanism.getGravityBasis(position), velocity, acceleration);
+      }
+      lastVelocity = velocity;
+      lastTime = now;
+      hasLast = true;
+
+      mechanism.setVoltage(direction * (quasistatic ? rampRate * timer.get() : stepVoltage));
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+      timer.stop();
+      mechanism.stop();
+      testLog.record("");
+    }
+
+    @Override
+    public boolean isFinished() {
+      return timer.hasElapsed(timeout) || !mechanism.canMove(mechanism.getPosition(), direction);
+    }
+  }
+
+  /**
+   * Runs all four tests with a rest between them, then solves the fit and saves the gains.
+   * @param rampRate Quasistatic ramp, volts per second
+   * @param stepVoltage Dynamic step, volts
+   */
+  public static CommandBase suite(Mechanism mechanism, double rampRate, double stepVoltage) {
+    FeedforwardFit fit = new FeedforwardFit(mechanism.hasGravity());
+    String prefix = "SysId " + mechanism.getName() + " ";
+    Telemetry.Entry kSEntry = Telemetry.number(prefix + "kS");
+    Telemetry.Entry kGEntry = Telemetry.number(prefix + "kG");
+    Telemetry.Entry kVEntry = Telemetry.number(prefix + "kV");
+    Telemetry.Entry kAEntry = Telemetry.number(prefix + "kA");
+    Telemetry.Entry rSquaredEntry = Telemetry.number(prefix + "r2");
+
+    return Commands.sequence(
+        Commands.runOnce(fit::reset),
+        new Test(mechanism, fit, true, 1, rampRate, stepVoltage),
+        rest(mechanism),
+        new Test(mechanism, fit, true, -1, rampRate, stepVoltage),
+        rest(mechanism),
+        new Test(mechanism, fit, false, 1, rampRate, stepVoltage),
+        rest(mechanism),
+        new Test(mechanism, fit, false, -1, rampRate, stepVoltage),
+        Commands.runOnce(() -> {
+          /* A kV at or below zero means the tests didn't move the mechanism the way it was driven */
+          if (!fit.solve() || fit.getKV() <= 0.0) {
+            DriverStation.reportWarning("Characterization of " + mechanism.getName() + " failed with "
+                + fit.getSampleCount() + " samples, gains not saved", false);
+            return;
+          }
+          kSEntry.set(fit.getKS());
+          kGEntry.set(fit.getKG());
+          kVEntry.set(fit.getKV());
+          kAEntry.set(fit.getKA());
+          rSquaredEntry.set(fit.getRSquared());
+          mechanism.save(fit);
+        }))
+        .withName("Characterize " + mechanism.getName());
+  }
+
+  private static CommandBase rest(Mechanism mechanism) {
+    return Commands.run(mechanism::stop, mechanism.getSubsystem()).withTimeout(CharacterizationConstants.kRestTime);
+  }
+
+  public static CommandBase arm(ArmSubsystem arm) {
+    return suite(new Mechanism() {
+      @Override
+      public String getName() {
+        return "Arm";
+      }
+
+      @Override
+      public Subsystem getSubsystem() {
+        return arm;
+      }
+
+      @Override
+      public void setVoltage(double volts) {
+        arm.setVoltage(volts);
+      }
+
+      @Override
+      public double getAppliedVoltage() {
+        return arm.getAppliedVoltage();
+      }
+
+      @Override
+      public double getPosition() {
+        return arm.getPosition();
+      }
+
+      @Override
+      public double getVelocity() {
+        return arm.getVelocity();
+      }
+
+      @Override
+      public boolean hasGravity() {
+        return true;
+      }
+
+      @Override
+      public double getGravityBasis(double position) {
+        return Math.cos(position);
+      }
+
+      @Override
+      public boolean canMove(double position, double direction) {
+        return direction > 0
+            ? position < NewArmConstants.kTopLimit - CharacterizationConstants.kLimitMargin
+            : position > NewArmConstants.kBottomLimit + CharacterizationConstants.kLimitMargin;
+      }
+
+      @Override
+      public void stop() {
+        /* The profiled controller would fight the test voltage */
+        if (arm.isEnabled()) {
+          arm.disable();
+        }
+        arm.stop();
+      }
+
+      @Override
+      public void save(FeedforwardFit fit) {
+        arm.saveGains(fit.getKS(), fit.getKG(), fit.getKV(), fit.getKA());
+      }
+    }, CharacterizationConstants.kArmRampRate, CharacterizationConstants.kArmStepVoltage);
+  }
+
+  public static CommandBase elevator(ProfiledPIDElevator elevator) {
+    return suite(new Mechanism() {
+      @Override
+      public String getName() {
+        return "Elevator";
+      }
+
+      @Override
+      public Subsystem getSubsystem() {
+        return elevator;
+      }
+
+      @Override
+      public void setVoltage(double volts) {
+        elevator.setVoltage(volts);
+      }
+
+      @Override
+      public double getAppliedVoltage() {
+        return elevator.getAppliedVoltage();
+      }
+
+      @Override
+      public double getPosition() {
+        return elevator.getPosition();
+      }
+
+      @Override
+      public double getVelocity() {
+        return elevator.getVelocity();
+      }
+
+      @Override
+      public boolean hasGravity() {
+        return true;
+      }
+
+      @Override
+      public double getGravityBasis(double position) {
+        return 1.0;
+      }
+
+      @Override
+      public boolean canMove(double position, double direction) {
+        /* setVoltage() won't drive an elevator that hasn't homed */
+        if (!elevator.isZeroed) {
+          return false;
+        }
+        return direction > 0
+            ? position < ElevatorConstants.kTopLimit - CharacterizationConstants.kLimitMargin
+            : position > ElevatorConstants.kBottomLimit + CharacterizationConstants.kLimitMargin;
+      }
+
+      @Override
+      public void stop() {
+        if (elevator.isEnabled()) {
+          elevator.disable();
+        }
+        elevator.stop();
+      }
+
+      @Override
+      public void save(FeedforwardFit fit) {
+        elevator.saveGains(fit.getKS(), fit.getKG(), fit.getKV(), fit.getKA());
+      }
+    }, CharacterizationConstants.kElevatorRampRate, CharacterizationConstants.kElevatorStepVoltage);
+  }
+
+  /** Drives straight ahead, so leave room in front of and behind the robot */
+  public static CommandBase drive(Swerve swerve) {
+    return suite(new Mechanism() {
+      @Override
+      public String getName() {
+        return "Drive";
+      }
+
+      @Override
+      public Subsystem getSubsystem() {
+        return swerve;
+      }
+
+      @Override
+      public void setVoltage(double volts) {
+        swerve.setDriveVoltage(volts);
+      }
+
+      @Override
+      public double getAppliedVoltage() {
+        return swerve.getDriveVoltage();
+      }
+
+      @Override
+      public double getPosition() {
+        return swerve.getDriveDistance();
+      }
+
+      @Override
+      public double getVelocity() {
+        return swerve.getDriveVelocity();
+      }
+
+      @Override
+      public boolean hasGravity() {
+        return false;
+      }
+
+      @Override
+      public double getGravityBasis(double position) {
+        return 0.0;
+      }
+
+      @Override
+      public boolean canMove(double position, double direction) {
+        return true;
+      }
+
+      @Override
+      public void stop() {
+        /* Zero volts rather than stopModules(), which would let the modules turn */
+        swerve.setDriveVoltage(0.0);
+      }
+
+      @Override
+      public void save(FeedforwardFit fit) {
+        swerve.saveDriveGains(fit.getKS(), fit.getKV(), fit.getKA());
+      }
+    }, CharacterizationConstants.kDriveRampRate, CharacterizationConstants.kDriveStepVoltage);
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import edu.wpi.first.math.controller.HolonomicDriveController;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.lib.trajectory.CompiledTrajectory;
+import frc.robot.Telemetry;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.subsystems.Swerve;
+
+/**
+ * Follows a trajectory with a holonomic controller. The trajectory is sampled once per loop through
+ * a cursor, and that one sample drives both the controller and the desired/error telemetry.
+ *
+ * Matches the SwerveControllerCommand it replaced: the robot turns toward the rotation of the
+ * final state's pose the whole way, not the holonomic rotation along the path, and the modules keep
+ * their last demand when it ends so chained paths run on without stopping.
+ */
+public class FollowTrajectory extends CommandBase {
+
+  private final CompiledTrajectory trajectory;
+  private final CompiledTrajectory.Cursor cursor;
+  private final CompiledTrajectory.State state = new CompiledTrajectory.State();
+  private final Rotation2d targetRotation;
+  private final Swerve swerve;
+  private final HolonomicDriveController controller;
+  private final Timer timer = new Timer();
+
+  private final Telemetry.Entry desiredXEntry = Telemetry.number("Desired X");
+  private final Telemetry.Entry desiredYEntry = Telemetry.number("Desired Y");
+  private final Telemetry.Entry desiredREntry = Telemetry.number("Desired R");
+  private final Telemetry.Entry errorXEntry = Telemetry.number("Error X");
+  private final Telemetry.Entry errorYEntry = Telemetry.number("Error Y");
+  private final Telemetry.Entry errorREntry = Telemetry.number("Error R");
+
+  public FollowTrajectory(Swerve swerve, CompiledTrajectory trajectory) {
+    this.swerve = swerve;
+    this.trajectory = trajectory;
+    cursor = trajectory.cursor();
+    /* SwerveControllerCommand's default rotation target, the final pose's rotation is the direction of travel */
+    CompiledTrajectory.State end = trajectory.getState(trajectory.getStateCount() - 1, new CompiledTrajectory.State());
+    targetRotation = new Rotation2d(end.headingRadians);
+
+    ProfiledPIDController thetaController = new ProfiledPIDController(
+        AutoConstants.kPThetaController, 0, 0, AutoConstants.kThetaControllerConstraints);
+    thetaController.enableContinuousInput(-Math.PI, Math.PI);
+    controller = new HolonomicDriveController(
+        new PIDController(AutoConstants.kPXController, 0, 0),
+        new PIDController(AutoConstants.kPYController, 0, 0),
+        thetaController);
+
+    addRequirements(swerve);
+  }
+
+  @Override
+  public void initialize() {
+    cursor.reset();
+    timer.reset();
+    timer.start();
+  }
+
+  @Override
+  public void execute() {
+    cursor.sample(timer.get(), state);
+    Pose2d pose = swerve.getPose();
+
+    ChassisSpeeds speeds = controller.calculate(
+        pose,
+        new Pose2d(state.xMeters, state.yMeters, new Rotation2d(state.headingRadians)),
+        state.velocityMetersPerSecond,
+        targetRotation);
+    swerve.drive(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond, false, false);
+
+    desiredXEntry.set(state.xMeters);
+    desiredYEntry.set(state.yMeters);
+    desiredREntry.set(targetRotation.getRadians());
+    errorXEntry.set(state.xMeters - pose.getX());
+    errorYEntry.set(state.yMeters - pose.getY());
+    errorREntry.set(targetRotation.getRadians() - pose.getRotation().getRadians());
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    timer.stop();
+  }
+
+  @Override
+  public boolean isFinished() {
+    return timer.hasElapsed(trajectory.getTotalTimeSeconds());
+  }
+}
@@ -21,6 +21,8 @@ public class IntakePiece extends CommandBase {
 
   private int stage;
 
+  private final Dashboard.NumberEntry stageEntry = Dashboard.Intake.Debugging.number("Intake Step");
+
   private Lightstrip lightstrip = null;
 
   //private CommandXboxController controller;
@@ -73,7 +75,7 @@ public class IntakePiece extends CommandBase {
         intake.moveIn();
       }
     }
-    Dashboard.Intake.Debugging.putNumber("Intake Step", stage);
+    stageEntry.set(stage);
   }
 
   // Called once the command ends or is interrupted.
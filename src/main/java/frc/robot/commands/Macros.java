@@ -13,6 +13,7 @@ import frc.robot.Constants.LimelightConstants.*;
 import frc.robot.Preset;
 import frc.robot.Constants.IntakeConstants;
 import frc.robot.Constants.Presets;
+import frc.robot.Constants.SuperstructureConstants;
 import frc.robot.subsystems.IntakeSubsystem;
 import frc.robot.subsystems.Lightstrip;
 import frc.robot.subsystems.Limelight;
@@ -20,6 +21,8 @@ import frc.robot.subsystems.ArmSubsystem;
 import frc.robot.subsystems.ProfiledPIDElevator;
 import frc.robot.subsystems.Swerve;
 import frc.robot.subsystems.IntakeSubsystem.Mode;
+import frc.robot.superstructure.SuperstructurePlanner;
+import frc.robot.superstructure.TransitionTable;
 
 /** Add your docs here. */
 public class Macros {
@@ -30,6 +33,8 @@ public class Macros {
   private final IntakeSubsystem intake;
   private final Limelight limelight;
 
+  private final SuperstructurePlanner planner = SuperstructurePlanner.fromConstants();
+  private final TransitionTable transitions = TransitionTable.load(planner, Presets.kAll);
 
   public Macros(
       Swerve swerve, 
@@ -54,6 +59,9 @@ public class Macros {
   }
 
   public CommandBase moveToPreset(double elevatorPos, double armPos) {
+    if (SuperstructureConstants.kUseCoordinatedMoves) {
+      return new MoveSuperstructure(arm, elevator, planner, transitions, armPos, elevatorPos);
+    }
     return Commands.parallel(
       arm.goToPosition(armPos),
       elevator.goToPosition(elevatorPos)
@@ -61,10 +69,7 @@ public class Macros {
   }
 
   public CommandBase moveToPreset(Preset preset) {
-    return Commands.parallel(
-      arm.goToPosition(preset.kArmPos),
-      elevator.goToPosition(preset.kElevatorPos)
-    );
+    return moveToPreset(preset.kElevatorPos, preset.kArmPos);
   }
 
 
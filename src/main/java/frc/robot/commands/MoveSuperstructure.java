@@ -0,0 +1,92 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.ArmSubsystem;
+import frc.robot.subsystems.ProfiledPIDElevator;
+import frc.robot.superstructure.SuperstructurePlanner;
+import frc.robot.superstructure.SuperstructureTrajectory;
+import frc.robot.superstructure.TransitionTable;
+
+/**
+ * Moves the arm and elevator together along one planned joint space trajectory. Starting at a
+ * preset and going to one, the move comes precomputed from the transition table; otherwise it is
+ * planned from wherever the mechanisms are when the command starts. Once the trajectory ends both
+ * hold the goal with their own controllers, and the command finishes when both are at it.
+ */
+public class MoveSuperstructure extends CommandBase {
+
+  private final ArmSubsystem arm;
+  private final ProfiledPIDElevator elevator;
+  private final SuperstructurePlanner planner;
+  private final TransitionTable transitions;
+  private final double armGoal;
+  private final double elevatorGoal;
+  private final Timer timer = new Timer();
+  private final SuperstructureTrajectory.State state = new SuperstructureTrajectory.State();
+
+  private SuperstructureTrajectory trajectory;
+  private boolean holding;
+
+  public MoveSuperstructure(ArmSubsystem arm, ProfiledPIDElevator elevator, SuperstructurePlanner planner, TransitionTable transitions, double armGoal, double elevatorGoal) {
+    this.arm = arm;
+    this.elevator = elevator;
+    this.planner = planner;
+    this.transitions = transitions;
+    this.armGoal = armGoal;
+    this.elevatorGoal = elevatorGoal;
+    addRequirements(arm, elevator);
+  }
+
+  @Override
+  public void initialize() {
+    double armStart = arm.getPosition();
+    double elevatorStart = elevator.getPosition();
+    trajectory = transitions.lookup(armStart, elevatorStart, armGoal, elevatorGoal);
+    if (trajectory == null) {
+      trajectory = planner.plan(armStart, elevatorStart, armGoal, elevatorGoal);
+    }
+    /* So atGoal() refers to this move from the start */
+    arm.setGoal(armGoal);
+    elevator.setGoal(elevatorGoal);
+    holding = false;
+    trajectory.sample(0.0, state);
+    timer.reset();
+    timer.start();
+  }
+
+  @Override
+  public void execute() {
+    if (holding) {
+      return;
+    }
+    if (timer.get() >= trajectory.getTotalTimeSeconds()) {
+      arm.holdPosition(armGoal);
+      elevator.holdPosition(elevatorGoal);
+      holding = true;
+      return;
+    }
+    trajectory.sample(timer.get(), state);
+    arm.trackSetpoint(state.armRadians, state.armRadiansPerSecond);
+    elevator.trackSetpoint(state.elevatorMeters, state.elevatorMetersPerSecond);
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    timer.stop();
+    if (!holding) {
+      /* Cut short, stay where the trajectory had got to */
+      arm.holdPosition(state.armRadians);
+      elevator.holdPosition(state.elevatorMeters);
+    }
+  }
+
+  @Override
+  public boolean isFinished() {
+    return holding && arm.atGoal() && elevator.atGoal();
+  }
+}
@@ -32,6 +32,10 @@ public class MoveToObject extends CommandBase {
   Swerve swerveSubsystem;
   Limelight camera;
 
+  Limelight.PipelineLease lease;
+  long lastFrame;
+  boolean measured; //false until a frame from the object pipeline has been used
+
   public MoveToObject(Swerve swerveSubsystem, Limelight camera, double targetXDist, double targetYDist, double targetR){
     this.targetXDist = targetXDist;
     this.targetYDist = targetYDist;
@@ -51,14 +55,26 @@ public class MoveToObject extends CommandBase {
     xcontroller.setTolerance(LimelightConstants.xtolerance);
     ycontroller.setTolerance(LimelightConstants.ytolerance);
     rcontroller.setTolerance(LimelightConstants.rtolerance);
+    lease = camera.acquirePipeline(2);
+    lastFrame = camera.getFrameSequence() - 1;
+    measured = false;
+    xspeed = 0;
+    yspeed = 0;
   }
 
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
+    Limelight.VisionFrame frame = camera.getFrame();
+    if (frame.sequence == lastFrame || !lease.owns(frame)) {
+      swerveSubsystem.drive(new Translation2d(xspeed, yspeed), 0, false, true);
+      return;
+    }
+    lastFrame = frame.sequence;
+    measured = true;
 
-    double currYAngle = camera.getObjectTY() + LimelightConstants.mountingangle;
-    double currXAngle = camera.getObjectTX();
+    double currYAngle = frame.ty + LimelightConstants.mountingangle;
+    double currXAngle = frame.tx;
 
     currXDist = (LimelightConstants.cameraheight - LimelightConstants.objectHeight) * Math.tan(currYAngle * (Math.PI/180)); //rad
     currYDist = currXDist*Math.tan(currXAngle * (Math.PI/180)); //rad
@@ -91,13 +107,14 @@ public class MoveToObject extends CommandBase {
   // Called once the command ends or is interrupted.
   @Override
   public void end(boolean interrupted) {
+    lease.release();
     swerveSubsystem.stopModules();
   }
 
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
-    return ((Math.abs(targetXDist - currXDist) < LimelightConstants.xtolerance) ||
+    return measured && ((Math.abs(targetXDist - currXDist) < LimelightConstants.xtolerance) ||
       (Math.abs(targetYDist - currYDist) < LimelightConstants.ytolerance) ||
       (xspeed == 0 && yspeed == 0));
   }
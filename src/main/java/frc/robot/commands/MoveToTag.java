@@ -25,6 +25,11 @@ public class MoveToTag extends CommandBase {
   private final double targetXDist;
   private final double targetYDist;
   private final double targetR;
+
+  private final Dashboard.NumberEntry rSpeedEntry = Dashboard.Limelight.Debugging.number("rspeed");
+  private final Dashboard.NumberEntry xSpeedEntry = Dashboard.Limelight.Debugging.number("xspeed");
+  private final Dashboard.NumberEntry ySpeedEntry = Dashboard.Limelight.Debugging.number("yspeed");
+  private final Dashboard.BooleanEntry yDistReachedEntry = Dashboard.Limelight.Debugging.bool("ydistreached");
   
   double xspeed;
   double rspeed;
@@ -36,6 +41,10 @@ public class MoveToTag extends CommandBase {
   boolean ydistreached;
   boolean atSetpoint;
 
+  Limelight.PipelineLease lease;
+  long lastFrame;
+  boolean measured; //false until a frame from the AprilTag pipeline has been used
+
   public MoveToTag(Swerve swerveSubsystem, Limelight camera, double targetXDist, double targetYDist, double targetR) {
     this.targetXDist = targetXDist;
     this.targetYDist = targetYDist;
@@ -55,6 +64,12 @@ public class MoveToTag extends CommandBase {
     ycontroller.setTolerance(LimelightConstants.ytolerance);
     rcontroller.setTolerance(LimelightConstants.rtolerance);
     ydistreached = false;
+    lease = camera.acquirePipeline(0);
+    lastFrame = camera.getFrameSequence() - 1; //use the current frame on the first execute
+    measured = false;
+    xspeed = 0;
+    yspeed = 0;
+    rspeed = 0;
 
     /* 
     if (swerveSubsystem.getFieldOriented()){
@@ -66,19 +81,28 @@ public class MoveToTag extends CommandBase {
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    double currentXDist = camera.getTX(); 
-    double currentYDist = camera.getTY();
-    double currentR = camera.getRZ();
+    //camera runs slower than the loop, only update the controllers on a new frame
+    Limelight.VisionFrame frame = camera.getFrame();
+    if (frame.sequence == lastFrame || !lease.owns(frame)) {
+      swerveSubsystem.drive(new Translation2d(xspeed, yspeed), 0, false, true);
+      return;
+    }
+    lastFrame = frame.sequence;
+    measured = true;
+
+    double currentXDist = frame.getTargetPose(2); 
+    double currentYDist = frame.getTargetPose(0);
+    double currentR = frame.getTargetPose(4);
 
     xspeed = -1 * MathUtil.clamp((xcontroller.calculate(currentXDist, targetXDist)), -LimelightConstants.xclamp, LimelightConstants.xclamp);
     yspeed = -1 * MathUtil.clamp((ycontroller.calculate(currentYDist, targetYDist - LimelightConstants.limelightOffsetCenter)), -LimelightConstants.yclamp, LimelightConstants.yclamp);
     rspeed = -0.5 * MathUtil.clamp((rcontroller.calculate(currentR, targetR)), -LimelightConstants.rclamp, LimelightConstants.rclamp);
     
-    Dashboard.Limelight.Debugging.putNumber("rspeed", rspeed);
-    Dashboard.Limelight.Debugging.putNumber("xspeed", xspeed);
-    Dashboard.Limelight.Debugging.putNumber("yspeed", yspeed);
+    rSpeedEntry.set(rspeed);
+    xSpeedEntry.set(xspeed);
+    ySpeedEntry.set(yspeed);
 
-    Dashboard.Limelight.Debugging.putBoolean("ydistreached", ydistreached);
+    yDistReachedEntry.set(ydistreached);
 
     swerveSubsystem.drive(new Translation2d(xspeed, yspeed), 0, false, true); //Have to recheck for swerve subsystem
 
@@ -114,6 +138,7 @@ public class MoveToTag extends CommandBase {
   // Called once the command ends or is interrupted.
   @Override
   public void end(boolean interrupted) {
+    lease.release();
     /* 
     if (!swerveSubsystem.getFieldOriented()){
       swerveSubsystem.toggleField();
@@ -124,6 +149,6 @@ public class MoveToTag extends CommandBase {
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
-    return ((atSetpoint) || (xspeed == 0 && yspeed == 0 && rspeed == 0));
+    return measured && ((atSetpoint) || (xspeed == 0 && yspeed == 0 && rspeed == 0));
   }
 }
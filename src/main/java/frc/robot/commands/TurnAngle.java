@@ -19,6 +19,8 @@ public class TurnAngle extends CommandBase {
 
   private final double targetR; 
 
+  private final Dashboard.NumberEntry rSpeedEntry = Dashboard.Limelight.Debugging.number("rspeed");
+
   Swerve swerveSubsystem;
 
   boolean atSetpoint;
@@ -61,7 +63,7 @@ public class TurnAngle extends CommandBase {
       rspeed = 0;
     }
     
-    Dashboard.Limelight.Debugging.putNumber("rspeed", rspeed);
+    rSpeedEntry.set(rspeed);
 
     atSetpoint = rcontroller.atSetpoint();
 
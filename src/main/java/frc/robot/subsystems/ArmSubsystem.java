@@ -4,6 +4,7 @@
 
 package frc.robot.subsystems;
 
+import com.ctre.phoenix.ErrorCode;
 import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
@@ -11,22 +12,73 @@ import com.ctre.phoenix.sensors.AbsoluteSensorRange;
 import com.ctre.phoenix.sensors.CANCoder;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.Preferences;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.ProfiledPIDSubsystem;
+import frc.lib.util.MotionMagicController;
+import frc.robot.LoopProfiler;
 import frc.robot.Dashboard;
+import frc.robot.Robot;
+import frc.robot.RobotLog;
+import frc.robot.Constants;
+import frc.robot.DeviceStartup;
+import frc.robot.Constants.ElevatorConstants;
 import frc.robot.Constants.NewArmConstants;
 
 public class ArmSubsystem extends ProfiledPIDSubsystem {
+  private final LoopProfiler.Section profile = LoopProfiler.section("Arm periodic");
+
 
   private final WPI_TalonFX armMotor = new WPI_TalonFX(NewArmConstants.kArmPort, "CANivore");
 
   // WPI_TalonFX armMotor = new WPI_TalonFX(ArmConstants.kArmPort, "CANivore");
   private final CANCoder absoluteEncoder = new CANCoder(NewArmConstants.kArmAbsoluteEncoderPort, "CANivore");
 
+  /* Used instead of the ProfiledPIDController when NewArmConstants.kUseMotionMagic is set */
+  private final MotionMagicController motionMagic = new MotionMagicController(
+      armMotor, NewArmConstants.kPositionConversionFactor, NewArmConstants.kNominalVoltage);
+  private boolean motionMagicActive = false;
+
+  /* Feedforward gains, loaded from Preferences by loadGains() */
+  private double kS;
+  private double kG;
+  private double kV;
+  private double kA;
+  private static final double gravity = 9.81;
+
+  /* The profiles don't report acceleration, so it is differenced from consecutive setpoints */
+  private double lastSetpointVelocity = 0.0;
+  private double lastSetpointTime = Double.NEGATIVE_INFINITY;
+  private DoubleSupplier elevatorAcceleration = () -> 0.0;
+
+  /* Follows setpoints from a coordinated arm and elevator trajectory, see trackSetpoint() */
+  private final PIDController trackingController = new PIDController(NewArmConstants.kPArm, NewArmConstants.kIArm, NewArmConstants.kDArm);
+
+  private final Dashboard.NumberEntry setVoltageEntry = Dashboard.Arm.Debugging.number("Set Arm Voltage");
+  private final Dashboard.NumberEntry desiredPositionEntry = Dashboard.Arm.Debugging.number("Desired Arm Position");
+  private final Dashboard.NumberEntry desiredVelocityEntry = Dashboard.Arm.Debugging.number("Desired Arm Velocity");
+  private final Dashboard.NumberEntry positionEntry = Dashboard.Arm.Debugging.number("New Arm Position");
+  private final Dashboard.NumberEntry velocityEntry = Dashboard.Arm.Debugging.number("New Arm Velocity");
+  private final Dashboard.NumberEntry outputVoltageEntry = Dashboard.Arm.Debugging.number("Arm Output Voltage");
+  private final Dashboard.BooleanEntry goalReachedEntry = Dashboard.Arm.Driver.bool("New Arm Goal Reached");
+  private final Dashboard.NumberEntry absoluteEncoderEntry = Dashboard.Arm.Debugging.number("Arm Abs Enc Deg");
+  private final Dashboard.NumberEntry speedEntry = Dashboard.Arm.Debugging.number("New Arm Speed");
+
+  private final RobotLog.Signal goalLog = RobotLog.number("Arm/Goal");
+  private final RobotLog.Signal setpointPositionLog = RobotLog.number("Arm/SetpointPosition");
+  private final RobotLog.Signal setpointVelocityLog = RobotLog.number("Arm/SetpointVelocity");
+  private final RobotLog.Signal outputLog = RobotLog.number("Arm/OutputVoltage");
+  private final RobotLog.Signal positionLog = RobotLog.number("Arm/Position");
+  private final RobotLog.Signal velocityLog = RobotLog.number("Arm/Velocity");
+
   public ArmSubsystem() {
     super(
 
@@ -35,43 +87,126 @@ public class ArmSubsystem extends ProfiledPIDSubsystem {
             NewArmConstants.kIArm,
             NewArmConstants.kDArm,
 
-            new TrapezoidProfile.Constraints(3, 4)));
+            new TrapezoidProfile.Constraints(NewArmConstants.kMaxVel, NewArmConstants.kMaxAcc)));
 
     this.getController().setTolerance(0.03);
 
-    armMotor.configFactoryDefault();
-    armMotor.configSelectedFeedbackSensor(FeedbackDevice.IntegratedSensor);
+    loadGains();
+    Robot.startup.submit("Arm", this::configure);
+    disable();
+
+    desiredPositionEntry.set(0);
+    desiredVelocityEntry.set(0);
+    
+  }
+
+  /* Runs on a startup thread */
+  private ErrorCode configure() {
+    ErrorCode error = DeviceStartup.firstError(
+        armMotor.configFactoryDefault(Constants.configTimeoutMs),
+        armMotor.configSelectedFeedbackSensor(FeedbackDevice.IntegratedSensor, 0, Constants.configTimeoutMs));
     armMotor.setInverted(NewArmConstants.kArmInverted);
     armMotor.setNeutralMode(NeutralMode.Brake);
 
-    absoluteEncoder.configSensorDirection(NewArmConstants.kArmAbsEncoderInverted);
-    // absoluteEncoder.configMagnetOffset(NewArmConstants.kAbsEncoderOffset);
-    absoluteEncoder.configAbsoluteSensorRange(AbsoluteSensorRange.Signed_PlusMinus180);
+    error = DeviceStartup.firstError(
+        error,
+        Robot.ctreConfigs.armFrames.apply(armMotor, "CANivore"),
+        absoluteEncoder.configSensorDirection(NewArmConstants.kArmAbsEncoderInverted, Constants.configTimeoutMs),
+        // absoluteEncoder.configMagnetOffset(NewArmConstants.kAbsEncoderOffset),
+        absoluteEncoder.configAbsoluteSensorRange(AbsoluteSensorRange.Signed_PlusMinus180, Constants.configTimeoutMs),
+        Robot.ctreConfigs.armCanCoderFrames.apply(absoluteEncoder, "CANivore"));
+
+    if (NewArmConstants.kUseMotionMagic) {
+      error = DeviceStartup.firstError(
+          error,
+          motionMagic.configure(
+              new MotionMagicController.Gains(NewArmConstants.kPArm, NewArmConstants.kDArm, NewArmConstants.kVUp),
+              new MotionMagicController.Gains(NewArmConstants.kPArm, NewArmConstants.kDArm, NewArmConstants.kVDown),
+              NewArmConstants.kMaxVel, NewArmConstants.kMaxAcc, NewArmConstants.kSCurveStrength, Constants.configTimeoutMs));
+    }
 
     resetEncoders();
-    disable();
+    return error;
+  }
 
-    Dashboard.Arm.Debugging.putNumber("Desired Arm Position", 0);
-    Dashboard.Arm.Debugging.putNumber("Desired Arm Velocity", 0);
-    
+  /** Reads the feedforward gains from Preferences, falling back to the ones in Constants */
+  public void loadGains() {
+    kS = loadGain("kS", NewArmConstants.kS);
+    kG = loadGain("kG", NewArmConstants.kG);
+    kV = loadGain("kV", NewArmConstants.kV);
+    kA = loadGain("kA", NewArmConstants.kA);
+  }
+
+  private static double loadGain(String name, double defaultValue) {
+    String key = "Arm " + name;
+    Preferences.initDouble(key, defaultValue);
+    return Preferences.getDouble(key, defaultValue);
+  }
+
+  /** Stores characterized feedforward gains in Preferences and starts using them */
+  public void saveGains(double kS, double kG, double kV, double kA) {
+    Preferences.setDouble("Arm kS", kS);
+    Preferences.setDouble("Arm kG", kG);
+    Preferences.setDouble("Arm kV", kV);
+    Preferences.setDouble("Arm kA", kA);
+    loadGains();
+  }
+
+  /** @param elevatorAcceleration Elevator's commanded acceleration along its travel, meters per second squared */
+  public void setElevatorAccelerationSupplier(DoubleSupplier elevatorAcceleration) {
+    this.elevatorAcceleration = elevatorAcceleration;
+  }
+
+  /**
+   * Gravity holds the arm down with kG at horizontal, falling off with the cosine of the angle. The
+   * elevator accelerating along its mount angle adds a pseudo force that loads the arm like extra
+   * gravity, by the sine of the angle between the arm and the elevator's travel.
+   * @param position Radians from horizontal
+   */
+  private double gravityFeedforward(double position) {
+    double coupling = elevatorAcceleration.getAsDouble() / gravity * Math.sin(ElevatorConstants.kMountAngleRadians - position);
+    return kG * (Math.cos(position) + coupling);
+  }
+
+  private double feedforward(double position, double velocity, double acceleration) {
+    return kS * Math.signum(velocity) + gravityFeedforward(position) + kV * velocity + kA * acceleration;
+  }
+
+  private double updateSetpointAcceleration(double velocity) {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastSetpointTime;
+    double acceleration = dt > 0 && dt < 0.1 ? (velocity - lastSetpointVelocity) / dt : 0.0;
+    lastSetpointVelocity = velocity;
+    lastSetpointTime = now;
+    return acceleration;
   }
 
   @Override
   public void useOutput(double output, TrapezoidProfile.State setpoint) {
 
-    double feedforward = 0.000;
+    double feedforward = feedforward(setpoint.position, setpoint.velocity, updateSetpointAcceleration(setpoint.velocity));
 
-    if(setpoint.velocity > 0) {
-      feedforward = setpoint.velocity * NewArmConstants.kVUp + NewArmConstants.kSUp;
-    }
-    else {
-      feedforward = setpoint.velocity * NewArmConstants.kVDown + NewArmConstants.kSDown;
+    setVoltage(feedforward + output);
+    setVoltageEntry.set(feedforward + output);
+    desiredPositionEntry.set(setpoint.position);
+    desiredVelocityEntry.set(setpoint.velocity);
+
+    goalLog.record(getController().getGoal().position);
+    setpointPositionLog.record(setpoint.position);
+    setpointVelocityLog.record(setpoint.velocity);
+    outputLog.record(feedforward + output);
+  }
+
+  /* Motion Magic only runs the profile and PID, static friction and gravity are added here like in useOutput() */
+  private void runMotionMagic() {
+    double feedforward = gravityFeedforward(getPosition());
+    if (!atGoal()) {
+      feedforward += motionMagic.isPositive() ? kS : -kS;
     }
+    motionMagic.run(feedforward);
 
-    setVoltage(feedforward + output);
-    Dashboard.Arm.Debugging.putNumber("Set Arm Voltage", feedforward + output);
-    Dashboard.Arm.Debugging.putNumber("Desired Arm Position", setpoint.position);
-    Dashboard.Arm.Debugging.putNumber("Desired Arm Velocity", setpoint.velocity);
+    goalLog.record(motionMagic.getGoal());
+    outputLog.record(armMotor.getMotorOutputVoltage());
   }
 
   @Override
@@ -79,9 +214,20 @@ public class ArmSubsystem extends ProfiledPIDSubsystem {
     return getPosition();
   }
 
+  @Override
+  public void disable() {
+    super.disable();
+    motionMagicActive = false;
+    lastSetpointTime = Double.NEGATIVE_INFINITY;
+  }
+
   @Override
   public void periodic() {
+    profile.start();
     super.periodic();
+    if (motionMagicActive) {
+      runMotionMagic();
+    }
     if (getPosition() > NewArmConstants.kTopLimit && armMotor.getMotorOutputVoltage() > 0) {
       armMotor.stopMotor();
     }
@@ -89,24 +235,60 @@ public class ArmSubsystem extends ProfiledPIDSubsystem {
       armMotor.stopMotor();
     }
     
-    Dashboard.Arm.Debugging.putNumber("New Arm Position", getPosition());
-    Dashboard.Arm.Debugging.putNumber("New Arm Velocity", getVelocity());
-    Dashboard.Arm.Debugging.putNumber("Arm Output Voltage", armMotor.getMotorOutputVoltage());
-    Dashboard.Arm.Driver.putBoolean("New Arm Goal Reached", atGoal());
-    Dashboard.Arm.Debugging.putNumber("Arm Abs Enc Deg", absoluteEncoder.getAbsolutePosition());
+    positionEntry.set(getPosition());
+    velocityEntry.set(getVelocity());
+    outputVoltageEntry.set(armMotor.getMotorOutputVoltage());
+    goalReachedEntry.set(atGoal());
+    absoluteEncoderEntry.set(absoluteEncoder.getAbsolutePosition());
+
+    positionLog.record(getPosition());
+    velocityLog.record(getVelocity());
 
+    profile.stop();
   }
 
   public CommandBase goToPosition(double position) {
-    return Commands.runOnce(() -> {
-      this.setGoal(position);
+    return Commands.runOnce(() -> holdPosition(position), this).andThen(Commands.waitUntil(this::atGoal));
+  }
+
+  /** Moves to and holds a position with the profiled controller, or Motion Magic, without waiting */
+  public void holdPosition(double position) {
+    this.setGoal(position);
+    if (NewArmConstants.kUseMotionMagic) {
+      motionMagic.setGoal(position, getPosition());
+      motionMagicActive = true;
+    } else {
       this.enable();
-    }, this).andThen(Commands.waitUntil(this::atGoal));
+    }
+  }
+
+  /**
+   * Tracks one setpoint of an externally planned move, call every loop while following it.
+   * The profiled controller stays off until holdPosition() or goToPosition().
+   */
+  public void trackSetpoint(double position, double velocity) {
+    if (isEnabled() || motionMagicActive) {
+      disable();
+    }
+    double output = trackingController.calculate(getPosition(), position);
+    double feedforward = feedforward(position, velocity, updateSetpointAcceleration(velocity));
+    setVoltage(feedforward + output);
+
+    setVoltageEntry.set(feedforward + output);
+    desiredPositionEntry.set(position);
+    desiredVelocityEntry.set(velocity);
+    setpointPositionLog.record(position);
+    setpointVelocityLog.record(velocity);
+    outputLog.record(feedforward + output);
   }
 
   public void setVoltage(double voltage) {
     voltage = MathUtil.clamp(voltage, -6, 6);
-    armMotor.setVoltage(voltage);
+    if (NewArmConstants.kUseMotionMagic) {
+      motionMagic.setVoltage(voltage);
+    } else {
+      armMotor.setVoltage(voltage);
+    }
   }
 
   public void setSpeed(double speed) {
@@ -118,7 +300,7 @@ public class ArmSubsystem extends ProfiledPIDSubsystem {
     if (getPosition() < NewArmConstants.kBottomLimit && speed < 0) {
       armMotor.stopMotor();
     }
-    Dashboard.Arm.Debugging.putNumber("New Arm Speed", speed);
+    speedEntry.set(speed);
   }
 
   public double getPosition() {
@@ -129,12 +311,16 @@ public class ArmSubsystem extends ProfiledPIDSubsystem {
     return armMotor.getSelectedSensorVelocity() * NewArmConstants.kVelocityConversionFactor;
   }
 
+  public double getAppliedVoltage() {
+    return armMotor.getMotorOutputVoltage();
+  }
+
   public void stop() {
     armMotor.stopMotor();
   }
 
   public void resetEncoders() {
-    armMotor.setSelectedSensorPosition((absoluteEncoder.getAbsolutePosition() - NewArmConstants.kAbsEncoderOffset) / 360.00 / NewArmConstants.kPositionConversionFactor);
+    armMotor.setSelectedSensorPosition(getPosition() / NewArmConstants.kPositionConversionFactor);
   }
 
   public boolean atGoal() {
@@ -8,12 +8,19 @@ import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.LoopProfiler;
 import frc.robot.Dashboard;
+import frc.robot.Robot;
+import frc.robot.RobotLog;
+import frc.robot.Constants;
+import frc.robot.DeviceStartup;
 import frc.robot.Constants.IntakeConstants;
 import frc.robot.Constants.lightstripConstants;
 import frc.robot.lightstrip.LedState;
 
 public class IntakeSubsystem extends SubsystemBase {
+  private final LoopProfiler.Section profile = LoopProfiler.section("Intake periodic");
+
   public final static int conePiece = 1;
   public final static int cubePiece = -1;
 
@@ -23,6 +30,18 @@ public class IntakeSubsystem extends SubsystemBase {
 
   private final WPI_TalonFX intake = new WPI_TalonFX(IntakeConstants.kIntakePort, "CANivore");
   private double intakeSpeed = 0;
+
+  private final Dashboard.NumberEntry setSpeedEntry = Dashboard.Intake.Debugging.number("Intake Set Speed");
+  private final Dashboard.NumberEntry setVoltageEntry = Dashboard.Intake.Debugging.number("Intake Set Voltage");
+  private final Dashboard.NumberEntry velocityEntry = Dashboard.Intake.Debugging.number("Intake Velocity");
+  private final Dashboard.NumberEntry speedEntry = Dashboard.Intake.Debugging.number("Intake Speed");
+  private final Dashboard.NumberEntry currentEntry = Dashboard.Intake.Debugging.number("Intake Current");
+  private final Dashboard.StringEntry modeEntry = Dashboard.Intake.Driver.string("Intake Mode");
+  private final Dashboard.NumberEntry nameEntry = Dashboard.Intake.Debugging.number(getName());
+
+  private final RobotLog.Signal speedLog = RobotLog.number("Intake/Speed");
+  private final RobotLog.Signal velocityLog = RobotLog.number("Intake/Velocity");
+  private final RobotLog.Signal currentLog = RobotLog.number("Intake/Current");
   public boolean stop = false;
 
   public boolean outtake = false;
@@ -41,7 +60,9 @@ public class IntakeSubsystem extends SubsystemBase {
   }
 
   public IntakeSubsystem(Lightstrip rLightstrip) {
-    intake.configFactoryDefault();
+    Robot.startup.submit("Intake", () -> DeviceStartup.firstError(
+        intake.configFactoryDefault(Constants.configTimeoutMs),
+        Robot.ctreConfigs.intakeFrames.apply(intake, "CANivore")));
     lightstrip = rLightstrip;
   }
 
@@ -50,12 +71,12 @@ public class IntakeSubsystem extends SubsystemBase {
   public void setSpeed(double speed) {
     intakeSpeed = speed;
     intake.set(intakeSpeed);
-    Dashboard.Intake.Debugging.putNumber("Intake Set Speed", intakeSpeed);
+    setSpeedEntry.set(intakeSpeed);
   }
 
   public void setVoltage(double voltage) {
     intake.setVoltage(voltage);
-    Dashboard.Intake.Debugging.putNumber("Intake Set Voltage", voltage);
+    setVoltageEntry.set(voltage);
   }
 
   public void moveIn() {
@@ -128,6 +149,7 @@ public class IntakeSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    profile.start();
     if(mode == Mode.CONE) {
       lightstrip.setColor(lightstripConstants.coneIntake);
     } else if(mode == Mode.CUBE) {
@@ -135,10 +157,15 @@ public class IntakeSubsystem extends SubsystemBase {
     }
 
 
-    Dashboard.Intake.Debugging.putNumber("Intake Velocity", getActualVelocity());
-    Dashboard.Intake.Debugging.putNumber("Intake Speed", intakeSpeed);
-    Dashboard.Intake.Debugging.putNumber("Intake Current", intake.getStatorCurrent());
-    Dashboard.Intake.Driver.putString("Intake Mode", mode.toString());
-    Dashboard.Intake.Debugging.putNumber(getName(), intakeSpeed);
+    velocityEntry.set(getActualVelocity());
+    speedEntry.set(intakeSpeed);
+    currentEntry.set(intake.getStatorCurrent());
+    modeEntry.set(mode.toString());
+    nameEntry.set(intakeSpeed);
+
+    speedLog.record(intakeSpeed);
+    velocityLog.record(getActualVelocity());
+    currentLog.record(intake.getStatorCurrent());
+    profile.stop();
   }
 }
@@ -6,13 +6,16 @@ package frc.robot.subsystems;
 
 import edu.wpi.first.wpilibj.PWM;
 import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.LoopProfiler;
+import frc.robot.Telemetry;
 import frc.robot.Constants.lightstripConstants;
 import frc.robot.lightstrip.LedState;
 import frc.robot.lightstrip.TempLedState;
 
 public class Lightstrip extends SubsystemBase {
+  private final LoopProfiler.Section profile = LoopProfiler.section("Lightstrip periodic");
+
   private PWM redOutput = new PWM(lightstripConstants.redPort);
   private PWM greenOutput = new PWM(lightstripConstants.greenPort);
   private PWM blueOutput = new PWM(lightstripConstants.bluePort);
@@ -24,6 +27,13 @@ public class Lightstrip extends SubsystemBase {
   private TempLedState tempColor = null;
   private Timer tempTimer = new Timer();
 
+  private final Telemetry.Entry redEntry = Telemetry.number("Red");
+  private final Telemetry.Entry greenEntry = Telemetry.number("Green");
+  private final Telemetry.Entry blueEntry = Telemetry.number("Blue");
+  private final Telemetry.Entry currentEntry = Telemetry.numberArray("Current");
+  private final Telemetry.Entry tempEntry = Telemetry.numberArray("Temp");
+  private final Telemetry.Entry timerEntry = Telemetry.number("Timer");
+
   /** Creates a new Lightstrip. */
   public Lightstrip() {
     defaultTimer.reset();
@@ -32,6 +42,7 @@ public class Lightstrip extends SubsystemBase {
 
   @Override
   public void periodic() {
+    profile.start();
     if(tempColor != null) {
       if(tempColor.getSeconds() < tempTimer.get()) {
         tempColor = null;
@@ -45,17 +56,18 @@ public class Lightstrip extends SubsystemBase {
       update(defaultColor, defaultTimer);
     }
 
-    SmartDashboard.putNumber("Red", redOutput.getRaw());
-    SmartDashboard.putNumber("Green", greenOutput.getRaw());
-    SmartDashboard.putNumber("Blue", blueOutput.getRaw());
+    redEntry.set(redOutput.getRaw());
+    greenEntry.set(greenOutput.getRaw());
+    blueEntry.set(blueOutput.getRaw());
 
     if(currentColor != null) {
-      SmartDashboard.putNumberArray("Current", currentColor.getState());
+      currentEntry.set(currentColor.getState());
     }
 
     if(tempColor != null) {
-      SmartDashboard.putNumberArray("Temp", tempColor.getState());
+      tempEntry.set(tempColor.getState());
     }
+    profile.stop();
   }
 
   private LedState toLedState(TempLedState state) {
@@ -64,7 +76,7 @@ public class Lightstrip extends SubsystemBase {
 
   private void update(LedState state, Timer timer) {
     double secondCycle = timer.get() % 1 - 0.50;
-    SmartDashboard.putNumber("Timer", timer.get() % 1 - 0.50 * state.getRed());
+    timerEntry.set(timer.get() % 1 - 0.50 * state.getRed());
     if(state.getEffect() == "Solid") {
       setColor(state.getRed(), state.getGreen(), state.getBlue());
     } else if(state.getEffect() == "Blink") {
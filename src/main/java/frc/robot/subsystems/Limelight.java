@@ -6,27 +6,85 @@
 
 package frc.robot.subsystems;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+
 import edu.wpi.first.cameraserver.CameraServer;
 import edu.wpi.first.cscore.UsbCamera;
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 //import edu.wpi.first.cscore.UsbCamera;
 import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.DoubleSubscriber;
+import edu.wpi.first.networktables.NetworkTableEvent;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.TimestampedDouble;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
-import frc.robot.Dashboard.Limelight.Debugging;
+import frc.robot.LoopProfiler;
+import frc.robot.Dashboard;
+import frc.robot.RobotLog;
 import frc.robot.Constants.LimelightConstants;
 
 
 
 public class Limelight extends SubsystemBase {
+  private final LoopProfiler.Section profile = LoopProfiler.section("Limelight periodic");
+
 
   NetworkTable limelightTable = NetworkTableInstance.getDefault().getTable("limelight");
   int targetID;
   double[] cameratotarget = new double[6];
 
+  /* The Limelight publishes tl last for every frame, so it marks a complete frame */
+  private final DoubleSubscriber tlSub = limelightTable.getDoubleTopic("tl").subscribe(0.0);
+  private final DoubleSubscriber clSub = limelightTable.getDoubleTopic("cl").subscribe(0.0);
+  private final DoubleSubscriber tvSub = limelightTable.getDoubleTopic("tv").subscribe(0.0);
+  private final DoubleSubscriber tidSub = limelightTable.getDoubleTopic("tid").subscribe(-1.0);
+  private final DoubleSubscriber getpipeSub = limelightTable.getDoubleTopic("getpipe").subscribe(-1.0);
+  private final DoubleSubscriber txSub = limelightTable.getDoubleTopic("tx").subscribe(0.0);
+  private final DoubleSubscriber tySub = limelightTable.getDoubleTopic("ty").subscribe(0.0);
+  private final DoubleSubscriber taSub = limelightTable.getDoubleTopic("ta").subscribe(0.0);
+  private final DoubleSubscriber tsSub = limelightTable.getDoubleTopic("ts").subscribe(0.0);
+  private final DoubleArraySubscriber targetPoseSub = limelightTable.getDoubleArrayTopic("targetpose_cameraspace").subscribe(new double[0]);
+  private final DoubleArraySubscriber botPoseSub = limelightTable.getDoubleArrayTopic("botpose_wpiblue").subscribe(new double[0]);
+  private final DoublePublisher pipelinePub = limelightTable.getDoubleTopic("pipeline").publish();
+
+  /* Written only by the NetworkTables listener thread */
+  private long frameCount = 0;
+  private volatile VisionFrame frame = VisionFrame.empty;
+  private int requestedPipeline = -1;
+
+  private final Dashboard.NumberEntry rttxEntry = Dashboard.Limelight.Debugging.number("RTTX");
+  private final Dashboard.NumberEntry rttyEntry = Dashboard.Limelight.Debugging.number("RTTY");
+  private final Dashboard.NumberEntry rttaEntry = Dashboard.Limelight.Debugging.number("RTTA");
+  private final Dashboard.NumberEntry xDistEntry = Dashboard.Limelight.Debugging.number("xdist");
+  private final Dashboard.NumberEntry yDistEntry = Dashboard.Limelight.Debugging.number("ydist");
+  private final Dashboard.NumberEntry pipelineEntry = Dashboard.Limelight.Debugging.number("Printing pipeline");
+  private final Dashboard.NumberEntry tagIdEntry = Dashboard.Limelight.Debugging.number("TAGID");
+  private final RobotLog.Signal sequenceLog = RobotLog.number("Vision/Sequence");
+  private final RobotLog.Signal captureTimeLog = RobotLog.number("Vision/CaptureTime");
+  private final RobotLog.Signal pipelineLog = RobotLog.number("Vision/Pipeline");
+  private final RobotLog.Signal hasTargetLog = RobotLog.bool("Vision/HasTarget");
+  private final RobotLog.Signal tagIdLog = RobotLog.number("Vision/TagId");
+  private final RobotLog.Signal txLog = RobotLog.number("Vision/TX");
+  private final RobotLog.Signal tyLog = RobotLog.number("Vision/TY");
+  private final RobotLog.Signal taLog = RobotLog.number("Vision/TA");
+  private final RobotLog.Signal poseXLog = RobotLog.number("Vision/Pose/X");
+  private final RobotLog.Signal poseYLog = RobotLog.number("Vision/Pose/Y");
+  private final RobotLog.Signal poseRotationLog = RobotLog.number("Vision/Pose/Rotation");
+  private final RobotLog.Signal tagCountLog = RobotLog.number("Vision/Pose/TagCount");
+
+  private final Dashboard.NumberEntry requestedPipelineEntry = Dashboard.Limelight.Debugging.number("Requested pipeline");
+
+  /* Newest lease wins, the AprilTag pipeline runs when nobody holds one */
+  private final ArrayList<PipelineLease> leases = new ArrayList<>();
+  public static final int defaultPipeline = 0;
+
   public Limelight() {
     //CameraServer.startAutomaticCapture(0);
 
@@ -35,19 +93,210 @@ public class Limelight extends SubsystemBase {
     UsbCamera LL3 = CameraServer.startAutomaticCapture(0);
     LL3.setBrightness(50); //idk
     LL3.setExposureManual(15);
+
+    applyPipeline();
+    NetworkTableInstance.getDefault().addListener(tlSub, EnumSet.of(NetworkTableEvent.Kind.kValueAll), event -> onFrame());
+  }
+
+  /** Field pose of the robot from the AprilTag pipeline, stamped with the time the frame was captured. */
+  public static class PoseEstimate {
+    public final Pose2d pose;
+    public final double timestamp; //FPGA seconds
+    public final int tagCount;
+    public final double avgTagDistance; //meters
+
+    public PoseEstimate(Pose2d pose, double timestamp, int tagCount, double avgTagDistance) {
+      this.pose = pose;
+      this.timestamp = timestamp;
+      this.tagCount = tagCount;
+      this.avgTagDistance = avgTagDistance;
+    }
+  }
+
+  /** Everything the Limelight published for one camera frame. Immutable once built. */
+  public static final class VisionFrame {
+    static final VisionFrame empty = new VisionFrame(0, 0, -1, false, -1, 0, 0, 0, 0, new double[6], null);
+
+    public final long sequence; //0 until the first frame arrives
+    public final double timestamp; //FPGA seconds at capture
+    public final int pipeline; //pipeline that produced the frame
+    public final boolean hasTarget;
+    public final int tagId;
+    public final double tx, ty, ta, ts; //degrees, percent of image, degrees
+    private final double[] targetPose; //camera space x, y, z in meters, roll, pitch, yaw in degrees
+    public final PoseEstimate poseEstimate; //null without an AprilTag fix
+
+    VisionFrame(long sequence, double timestamp, int pipeline, boolean hasTarget, int tagId,
+        double tx, double ty, double ta, double ts, double[] targetPose, PoseEstimate poseEstimate) {
+      this.sequence = sequence;
+      this.timestamp = timestamp;
+      this.pipeline = pipeline;
+      this.hasTarget = hasTarget;
+      this.tagId = tagId;
+      this.tx = tx;
+      this.ty = ty;
+      this.ta = ta;
+      this.ts = ts;
+      this.targetPose = targetPose;
+      this.poseEstimate = poseEstimate;
+    }
+
+    /** @param index 0 to 5, see getCamtoTarget() for the order */
+    public double getTargetPose(int index) {
+      return targetPose[index];
+    }
+  }
+
+  /* Runs on the NetworkTables listener thread once per published frame */
+  private void onFrame() {
+    TimestampedDouble tl = tlSub.getAtomic();
+    /* Pipeline latency plus capture latency, in milliseconds. NT time is FPGA time on the RIO */
+    double timestamp = tl.timestamp / 1e6 - (tl.value + clSub.get()) / 1000.0;
+
+    int pipeline = (int) getpipeSub.get();
+    boolean hasTarget = tvSub.get() >= 1;
+
+    double[] targetPose = new double[6];
+    double[] t = targetPoseSub.get();
+    System.arraycopy(t, 0, targetPose, 0, Math.min(t.length, 6));
+
+    PoseEstimate poseEstimate = null;
+    if (pipeline == 0 && hasTarget) {
+      poseEstimate = toPoseEstimate(botPoseSub.get(), timestamp, targetPose);
+    }
+
+    VisionFrame f = new VisionFrame(++frameCount, timestamp, pipeline, hasTarget, (int) tidSub.get(),
+        txSub.get(), tySub.get(), taSub.get(), tsSub.get(), targetPose, poseEstimate);
+    frame = f;
+    logFrame(f);
+  }
+
+  private void logFrame(VisionFrame f) {
+    sequenceLog.record(f.sequence);
+    captureTimeLog.record(f.timestamp);
+    pipelineLog.record(f.pipeline);
+    hasTargetLog.record(f.hasTarget);
+    tagIdLog.record(f.tagId);
+    txLog.record(f.tx);
+    tyLog.record(f.ty);
+    taLog.record(f.ta);
+    if (f.poseEstimate != null) {
+      poseXLog.record(f.poseEstimate.pose.getX());
+      poseYLog.record(f.poseEstimate.pose.getY());
+      poseRotationLog.record(f.poseEstimate.pose.getRotation().getDegrees());
+      tagCountLog.record(f.poseEstimate.tagCount);
+    }
+  }
+
+  private static PoseEstimate toPoseEstimate(double[] botpose, double timestamp, double[] targetPose) {
+    if (botpose.length < 6) {
+      return null;
+    }
+
+    /* Newer firmware appends tag count and average tag distance, older firmware only sees the primary tag */
+    int tagCount = 1;
+    double avgTagDistance;
+    if (botpose.length >= 10) {
+      tagCount = (int) botpose[7];
+      avgTagDistance = botpose[9];
+    } else {
+      double[] t = targetPose;
+      avgTagDistance = Math.sqrt(t[0] * t[0] + t[1] * t[1] + t[2] * t[2]);
+    }
+
+    Pose2d pose = new Pose2d(botpose[0], botpose[1], Rotation2d.fromDegrees(botpose[5]));
+    return new PoseEstimate(pose, timestamp, tagCount, avgTagDistance);
+  }
+
+  /** @return Newest complete frame, never null */
+  public VisionFrame getFrame() {
+    return frame;
+  }
+
+  /** @return Sequence number of the newest frame, pass it to hasNewFrameSince() later */
+  public long getFrameSequence() {
+    return frame.sequence;
+  }
+
+  /** @return true once a frame newer than sequence has arrived */
+  public boolean hasNewFrameSince(long sequence) {
+    return frame.sequence > sequence;
+  }
+
+  /** Claim on a pipeline, held by a command from initialize() until end(). */
+  public final class PipelineLease {
+    public final int pipeline;
+
+    private PipelineLease(int pipeline) {
+      this.pipeline = pipeline;
+    }
+
+    /** @return true while this is the newest lease, so the camera is (or is switching to) its pipeline */
+    public boolean isActive() {
+      return !leases.isEmpty() && leases.get(leases.size() - 1) == this;
+    }
+
+    /** @return true if the frame was produced by this lease's pipeline */
+    public boolean owns(VisionFrame f) {
+      return f.pipeline == pipeline;
+    }
+
+    public void release() {
+      if (leases.remove(this)) {
+        applyPipeline();
+      }
+    }
+  }
+
+  /**
+   * Switches the camera to a pipeline until the lease is released or a newer lease is taken.
+   * Frames keep coming from the old pipeline for a few frames after a switch, check owns().
+   */
+  public PipelineLease acquirePipeline(int pipeline) {
+    PipelineLease lease = new PipelineLease(pipeline);
+    leases.add(lease);
+    applyPipeline();
+    return lease;
+  }
+
+  /** @return Pipeline the camera has been asked to run */
+  public int getRequestedPipeline() {
+    return requestedPipeline;
+  }
+
+  /** @return true if the newest frame came from the given pipeline */
+  public boolean isFrameFrom(int pipeline) {
+    return frame.pipeline == pipeline;
+  }
+
+  private void applyPipeline() {
+    int pipeline = leases.isEmpty() ? defaultPipeline : leases.get(leases.size() - 1).pipeline;
+    /* Only switch on lease changes, every switch costs a few stale frames */
+    if (pipeline != requestedPipeline) {
+      requestedPipeline = pipeline;
+      pipelinePub.set(pipeline);
+    }
   }
 
   //fiducial markers pipeline
 
   public int getId() {
-    limelightTable.getEntry("pipeline").setNumber(0);
-    //targetID = limelightTable.getEntry("tid").getInteger(0);
+    targetID = frame.tagId;
     return (targetID);
   }
 
+  /**
+   * @return Blue origin robot pose from the newest frame, or null when no tag is in view
+   */
+  public PoseEstimate getBotPoseEstimate() {
+    return frame.poseEstimate;
+  }
+
   public double[] getCamtoTarget() {
-    limelightTable.getEntry("pipeline").setNumber(0);
-    cameratotarget = limelightTable.getEntry("targetpose_cameraspace").getDoubleArray(new double[6]); //x, y, z, in meters. roll, pitch, yaw in degrees  (translation + rotation)
+    VisionFrame f = frame;
+    for (int i = 0; i < 6; i++) {
+      cameratotarget[i] = f.getTargetPose(i); //x, y, z, in meters. roll, pitch, yaw in degrees  (translation + rotation)
+    }
     return (cameratotarget);
 
     /*
@@ -64,7 +313,11 @@ public class Limelight extends SubsystemBase {
   }
 
   public Transform3d CamtoTarget() { //order maybe incorrect??
-    var t = getCamtoTarget();
+    return toTransform(getCamtoTarget());
+  }
+
+  /** @param t Camera space target pose in the order of getCamtoTarget() */
+  public static Transform3d toTransform(double[] t) {
     /*
      * (x, y, z, roll, pitch, yaw) 
      * forward/backward, along length of field
@@ -79,127 +332,83 @@ public class Limelight extends SubsystemBase {
     return new Transform3d(new Pose3d(0, 0, 0, new Rotation3d(0, 0, 0)), new Pose3d(t[2], t[0], t[1], new Rotation3d(t[5], t[3], t[4])));
   }
 
-  public static final Pose3d[] blueGameAprilTags = { //copied, check all
-     new Pose3d(0, 0, 0, new Rotation3d(0, 0, 0)),
-    //new Pose3d(15.51, 1.07, 0.46, new Rotation3d(0, 0, Math.PI)),
-    new Pose3d(15.51, 2.74, 0.46, new Rotation3d(0, 0, Math.PI)), //field layout
-    new Pose3d(15.51, 4.42, 0.46, new Rotation3d(0, 0, Math.PI)),
-    new Pose3d(16.18, 6.75, 0.69, new Rotation3d(0, 0, Math.PI)),
-    new Pose3d(0.36, 6.75, 0.69, new Rotation3d(0, 0, 0)),
-    new Pose3d(1.03, 4.42, 0.46, new Rotation3d(0, 0, 0)),
-    new Pose3d(1.03, 4.42, 0.46, new Rotation3d(0, 0, 0)),
-    // new Pose3d(1.03, 2.74, 0.46, new Rotation3d(0, 0, 0)),
-    new Pose3d(1.03, 1.07, 0.46, new Rotation3d(0, 0, 0))
-  };
-
-  public Pose3d campose() {
-    var targetPose = blueGameAprilTags[getId()];
-    return targetPose.transformBy(CamtoTarget().inverse()); //target to camera
-  }
-
   public double getTY(){ //left right, y controller
-    limelightTable.getEntry("pipeline").setNumber(0);
-    cameratotarget = limelightTable.getEntry("targetpose_cameraspace").getDoubleArray(new double[6]); //z(up/down), y(left/right), x(forward/backward), rx?, ry(left/right), rz?
-    return (cameratotarget[0]);
+    return frame.getTargetPose(0); //z(up/down), y(left/right), x(forward/backward), rx?, ry(left/right), rz?
   }
 
   public double getTZ(){ //up down, not used
-    limelightTable.getEntry("pipeline").setNumber(0);
-    cameratotarget = limelightTable.getEntry("targetpose_cameraspace").getDoubleArray(new double[6]); 
-    return (cameratotarget[1]);
+    return frame.getTargetPose(1);
   }
 
   public double getTX(){  //front back, x controller
-    limelightTable.getEntry("pipeline").setNumber(0);
-    cameratotarget = limelightTable.getEntry("targetpose_cameraspace").getDoubleArray(new double[6]); 
-    return (cameratotarget[2]);
+    return frame.getTargetPose(2);
   }
 
   public double getRY(){ 
-    limelightTable.getEntry("pipeline").setNumber(0);
-    cameratotarget = limelightTable.getEntry("targetpose_cameraspace").getDoubleArray(new double[6]); 
-    return (cameratotarget[3]);
+    return frame.getTargetPose(3);
   }
 
   public double getRZ(){ //rotation used
-    limelightTable.getEntry("pipeline").setNumber(0);
-    cameratotarget = limelightTable.getEntry("targetpose_cameraspace").getDoubleArray(new double[6]); 
-    return (cameratotarget[4]);
+    return frame.getTargetPose(4);
   }
 
   public double getRX(){
-    limelightTable.getEntry("pipeline").setNumber(0);
-    cameratotarget = limelightTable.getEntry("targetpose_cameraspace").getDoubleArray(new double[6]); 
-    return (cameratotarget[5]);
+    return frame.getTargetPose(5);
   }
 
   //retroreflective tape pipeline
 
   public double getRTTX(){ //left/right
-    limelightTable.getEntry("pipeline").setNumber(1);
-    NetworkTableEntry tx = limelightTable.getEntry("tx");
-    double x = tx.getDouble(0.0);
-    return x;
+    return frame.tx;
   }
 
   public double getRTTY(){ //up/down
-    limelightTable.getEntry("pipeline").setNumber(1);
-    NetworkTableEntry ty = limelightTable.getEntry("ty");
-    double y = ty.getDouble(0.0);
-    return y;
+    return frame.ty;
   }
 
   public double getRTTA(){
-    limelightTable.getEntry("pipeline").setNumber(1);
-    NetworkTableEntry ta = limelightTable.getEntry("ta");
-    double a = ta.getDouble(0.0);
-    return a;
+    return frame.ta;
   }
 
   public double getRTTS(){
-    limelightTable.getEntry("pipeline").setNumber(1);
-    NetworkTableEntry ts = limelightTable.getEntry("ts");
-    double s = ts.getDouble(0.0);
-    return s;
+    return frame.ts;
   }
 
   public double getObjectTX(){
-    limelightTable.getEntry("pipeline").setNumber(2);
-    NetworkTableEntry tx = limelightTable.getEntry("tx");
-    double x = tx.getDouble(0.0);
-    return x;
+    return frame.tx;
   }
 
   public double getObjectTY(){
-    limelightTable.getEntry("pipeline").setNumber(2);
-    NetworkTableEntry ty = limelightTable.getEntry("ty");
-    double y = ty.getDouble(0.0);
-    return y;
+    return frame.ty;
   }
 
   @Override
   public void periodic() {
+    profile.start();
 
-    int pipeline = limelightTable.getEntry("pipeline").getNumber(0).intValue();
+    VisionFrame f = frame;
+    int pipeline = f.pipeline;
 
     if (pipeline == 1) {
-      Debugging.putNumber("RTTX", getRTTX());
-      Debugging.putNumber("RTTY", getRTTY());
-      Debugging.putNumber("RTTA", getRTTA());
-      double currentXdistance = (LimelightConstants.RTheight - LimelightConstants.cameraheight)/Math.tan(getRTTY()*Math.PI/180); //radians
-      double currentYdistance = Math.tan(getRTTX()*Math.PI/180) * currentXdistance; //+
-
-      Debugging.putNumber("xdist", currentXdistance);
-      Debugging.putNumber("ydist", currentYdistance);
-      Debugging.putNumber("Printing pipeline", 1);
+      rttxEntry.set(f.tx);
+      rttyEntry.set(f.ty);
+      rttaEntry.set(f.ta);
+      double currentXdistance = (LimelightConstants.RTheight - LimelightConstants.cameraheight)/Math.tan(f.ty*Math.PI/180); //radians
+      double currentYdistance = Math.tan(f.tx*Math.PI/180) * currentXdistance; //+
+
+      xDistEntry.set(currentXdistance);
+      yDistEntry.set(currentYdistance);
+      pipelineEntry.set(1);
     } else if (pipeline == 0) {
-      Debugging.putNumber("TAGID", getId());
-      Debugging.putNumber("Printing pipeline", 0);
+      tagIdEntry.set(f.tagId);
+      pipelineEntry.set(0);
     }
+    requestedPipelineEntry.set(requestedPipeline);
     
 
     
     
     
+    profile.stop();
   }
 }
@@ -6,28 +6,74 @@
 
 package frc.robot.subsystems;
 
+import com.ctre.phoenix.ErrorCode;
 import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.filter.LinearFilter;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.Preferences;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.ProfiledPIDSubsystem;
+import frc.lib.util.MotionMagicController;
+import frc.robot.LoopProfiler;
 import frc.robot.Dashboard;
+import frc.robot.Robot;
+import frc.robot.RobotLog;
+import frc.robot.Constants;
+import frc.robot.DeviceStartup;
+import frc.robot.CTREConfigs;
 import frc.robot.Constants.ElevatorConstants;
 
 public class ProfiledPIDElevator extends ProfiledPIDSubsystem {
+  private final LoopProfiler.Section profile = LoopProfiler.section("Elevator periodic");
+
 
   public final WPI_TalonFX leftElevator = new WPI_TalonFX(ElevatorConstants.kLeftElevatorPort, "CANivore");
   public final WPI_TalonFX rightElevator = new WPI_TalonFX(ElevatorConstants.kRightElevatorPort, "CANivore");
   LinearFilter homingMovingAvg = LinearFilter.movingAverage(8);
 
+  /* Used instead of the ProfiledPIDController when ElevatorConstants.kUseMotionMagic is set, the left motor follows */
+  private final MotionMagicController motionMagic = new MotionMagicController(
+      rightElevator, ElevatorConstants.kPositionConversionFactor, ElevatorConstants.kNominalVoltage);
+  private boolean motionMagicActive = false;
+
+  /* Feedforward gains, loaded from Preferences by loadGains() */
+  private double kS;
+  private double kG;
+  private double kV;
+  private double kA;
+
+  /* The profiles don't report acceleration, so it is differenced from consecutive setpoints */
+  private double lastSetpointVelocity = 0.0;
+  private double lastSetpointTime = Double.NEGATIVE_INFINITY;
+  private double setpointAcceleration = 0.0;
+
+  /* Follows setpoints from a coordinated arm and elevator trajectory, see trackSetpoint() */
+  private final PIDController trackingController = new PIDController(ElevatorConstants.kP, ElevatorConstants.kI, ElevatorConstants.kD);
+
   public boolean isZeroed = false;
   private boolean softLimitsEnabled = false;
+
+  private final Dashboard.NumberEntry currentEntry = Dashboard.Elevator.Debugging.number("Elevator Current");
+  private final Dashboard.NumberEntry positionEntry = Dashboard.Elevator.Debugging.number("Elevator Position");
+  private final Dashboard.NumberEntry velocityEntry = Dashboard.Elevator.Debugging.number("Elevator Velocity");
+  private final Dashboard.NumberEntry voltageEntry = Dashboard.Elevator.Debugging.number("Elevator Voltage");
+  private final Dashboard.BooleanEntry goalReachedEntry = Dashboard.Elevator.Driver.bool("Elevator Goal Reached");
+
+  private final RobotLog.Signal goalLog = RobotLog.number("Elevator/Goal");
+  private final RobotLog.Signal setpointPositionLog = RobotLog.number("Elevator/SetpointPosition");
+  private final RobotLog.Signal setpointVelocityLog = RobotLog.number("Elevator/SetpointVelocity");
+  private final RobotLog.Signal outputLog = RobotLog.number("Elevator/OutputVoltage");
+  private final RobotLog.Signal positionLog = RobotLog.number("Elevator/Position");
+  private final RobotLog.Signal velocityLog = RobotLog.number("Elevator/Velocity");
+  private final RobotLog.Signal currentLog = RobotLog.number("Elevator/Current");
   
   public ProfiledPIDElevator() {
     super(
@@ -38,34 +84,98 @@ public class ProfiledPIDElevator extends ProfiledPIDSubsystem {
             new TrapezoidProfile.Constraints(ElevatorConstants.kMaxVel, ElevatorConstants.kMaxAcc)));
 
     this.getController().setTolerance(0.02);
+    loadGains();
             
-    leftElevator.configFactoryDefault();
-    rightElevator.configFactoryDefault();
-    leftElevator.setInverted(ElevatorConstants.kLeftElevatorInverted);
-    rightElevator.setInverted(ElevatorConstants.kRightElevatorInverted);
-    leftElevator.setNeutralMode(NeutralMode.Brake);
-    rightElevator.setNeutralMode(NeutralMode.Brake);
-
-    leftElevator.configSelectedFeedbackSensor(FeedbackDevice.IntegratedSensor);
-    rightElevator.configSelectedFeedbackSensor(FeedbackDevice.IntegratedSensor);
-
-    leftElevator.configForwardSoftLimitThreshold(ElevatorConstants.kTopLimit / ElevatorConstants.kPositionConversionFactor, 0);
-    leftElevator.configReverseSoftLimitThreshold(ElevatorConstants.kBottomLimit / ElevatorConstants.kPositionConversionFactor, 0);
-
-    rightElevator.configForwardSoftLimitThreshold(ElevatorConstants.kTopLimit / ElevatorConstants.kPositionConversionFactor, 0);
-    rightElevator.configReverseSoftLimitThreshold(ElevatorConstants.kBottomLimit / ElevatorConstants.kPositionConversionFactor, 0);
-    resetEncoders();
+    /* Each motor is its own device so a bad one is reported by name */
+    Robot.startup.submit("Elevator Left", () -> DeviceStartup.firstError(
+        configureMotor(leftElevator, ElevatorConstants.kLeftElevatorInverted, Robot.ctreConfigs.elevatorFollowerFrames),
+        configureFollowerMotionMagic()));
+    Robot.startup.submit("Elevator Right", () -> DeviceStartup.firstError(
+        configureMotor(rightElevator, ElevatorConstants.kRightElevatorInverted, Robot.ctreConfigs.elevatorLeaderFrames),
+        configureMotionMagic(),
+        rightElevator.setSelectedSensorPosition(0, 0, Constants.configTimeoutMs)));
     disable();
   }
 
+  /* Runs on a startup thread */
+  private static ErrorCode configureMotor(WPI_TalonFX motor, boolean inverted, CTREConfigs.TalonFXStatusFrames frames) {
+    ErrorCode error = motor.configFactoryDefault(Constants.configTimeoutMs);
+    motor.setInverted(inverted);
+    motor.setNeutralMode(NeutralMode.Brake);
+
+    return DeviceStartup.firstError(
+        error,
+        frames.apply(motor, "CANivore"),
+        motor.configSelectedFeedbackSensor(FeedbackDevice.IntegratedSensor, 0, Constants.configTimeoutMs),
+        motor.configForwardSoftLimitThreshold(ElevatorConstants.kTopLimit / ElevatorConstants.kPositionConversionFactor, Constants.configTimeoutMs),
+        motor.configReverseSoftLimitThreshold(ElevatorConstants.kBottomLimit / ElevatorConstants.kPositionConversionFactor, Constants.configTimeoutMs));
+  }
+
+  /* Runs on a startup thread */
+  private ErrorCode configureMotionMagic() {
+    if (!ElevatorConstants.kUseMotionMagic) {
+      return ErrorCode.OK;
+    }
+    return motionMagic.configure(
+        new MotionMagicController.Gains(ElevatorConstants.kP, ElevatorConstants.kD, ElevatorConstants.kVUp),
+        new MotionMagicController.Gains(ElevatorConstants.kP, ElevatorConstants.kD, ElevatorConstants.kVDown),
+        ElevatorConstants.kMaxVel, ElevatorConstants.kMaxAcc, ElevatorConstants.kSCurveStrength, Constants.configTimeoutMs);
+  }
+
+  /* Runs on a startup thread, the follower only needs voltage compensation to match the leader */
+  private ErrorCode configureFollowerMotionMagic() {
+    if (!ElevatorConstants.kUseMotionMagic) {
+      return ErrorCode.OK;
+    }
+    ErrorCode error = leftElevator.configVoltageCompSaturation(ElevatorConstants.kNominalVoltage, Constants.configTimeoutMs);
+    leftElevator.enableVoltageCompensation(true);
+    return error;
+  }
+
+  /** Reads the feedforward gains from Preferences, falling back to the ones in Constants */
+  public void loadGains() {
+    kS = loadGain("kS", ElevatorConstants.kS);
+    kG = loadGain("kG", ElevatorConstants.kG);
+    kV = loadGain("kV", ElevatorConstants.kV);
+    kA = loadGain("kA", ElevatorConstants.kA);
+  }
+
+  private static double loadGain(String name, double defaultValue) {
+    String key = "Elevator " + name;
+    Preferences.initDouble(key, defaultValue);
+    return Preferences.getDouble(key, defaultValue);
+  }
+
+  /** Stores characterized feedforward gains in Preferences and starts using them */
+  public void saveGains(double kS, double kG, double kV, double kA) {
+    Preferences.setDouble("Elevator kS", kS);
+    Preferences.setDouble("Elevator kG", kG);
+    Preferences.setDouble("Elevator kV", kV);
+    Preferences.setDouble("Elevator kA", kA);
+    loadGains();
+  }
+
+  private double feedforward(double velocity, double acceleration) {
+    return kS * Math.signum(velocity) + kG + kV * velocity + kA * acceleration;
+  }
+
+  private double updateSetpointAcceleration(double velocity) {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastSetpointTime;
+    setpointAcceleration = dt > 0 && dt < 0.1 ? (velocity - lastSetpointVelocity) / dt : 0.0;
+    lastSetpointVelocity = velocity;
+    lastSetpointTime = now;
+    return setpointAcceleration;
+  }
+
+  /** @return Acceleration of the last closed loop setpoint, 0 when not following a profile on the RIO */
+  public double getSetpointAcceleration() {
+    return setpointAcceleration;
+  }
+
   @Override
   public void useOutput(double output, TrapezoidProfile.State setpoint) {
-    double feedforward = 0;
-    if (setpoint.velocity > 0) {
-      feedforward = setpoint.velocity * ElevatorConstants.kVUp + ElevatorConstants.kSUp;
-    } else {
-      feedforward = setpoint.velocity * ElevatorConstants.kVDown + ElevatorConstants.kSDown;
-    }
+    double feedforward = feedforward(setpoint.velocity, updateSetpointAcceleration(setpoint.velocity));
 
     if (isZeroed) {
       setVoltage(feedforward + output);
@@ -74,6 +184,27 @@ public class ProfiledPIDElevator extends ProfiledPIDSubsystem {
     }
     
     //Dashboard.Elevator.Debugging.putNumber("Set Voltage", (feedforward + output));
+    goalLog.record(getController().getGoal().position);
+    setpointPositionLog.record(setpoint.position);
+    setpointVelocityLog.record(setpoint.velocity);
+    outputLog.record(feedforward + output);
+  }
+
+  /* Motion Magic only runs the profile and PID, static friction and gravity are added here like in useOutput() */
+  private void runMotionMagic() {
+    if (!isZeroed) {
+      stop();
+      return;
+    }
+    double feedforward = kG;
+    if (!atGoal()) {
+      feedforward += motionMagic.isPositive() ? kS : -kS;
+    }
+    motionMagic.run(feedforward);
+    leftElevator.follow(rightElevator);
+
+    goalLog.record(motionMagic.getGoal());
+    outputLog.record(rightElevator.getMotorOutputVoltage());
   }
 
   @Override
@@ -81,16 +212,53 @@ public class ProfiledPIDElevator extends ProfiledPIDSubsystem {
     return getPosition();
   }
 
+  @Override
+  public void disable() {
+    super.disable();
+    motionMagicActive = false;
+    lastSetpointTime = Double.NEGATIVE_INFINITY;
+    setpointAcceleration = 0.0;
+  }
+
   public CommandBase goToPosition(double position) {
-    return Commands.runOnce(() -> {
-      this.setGoal(position);
+    return Commands.runOnce(() -> holdPosition(position), this).andThen(Commands.waitUntil(this::atGoal));
+  }
+
+  /** Moves to and holds a position with the profiled controller, or Motion Magic, without waiting */
+  public void holdPosition(double position) {
+    this.setGoal(position);
+    if (ElevatorConstants.kUseMotionMagic) {
+      motionMagic.setGoal(position, getPosition());
+      motionMagicActive = true;
+    } else {
       this.enable();
-    }, this).andThen(Commands.waitUntil(this::atGoal));
+    }
+  }
+
+  /**
+   * Tracks one setpoint of an externally planned move, call every loop while following it.
+   * The profiled controller stays off until holdPosition() or goToPosition().
+   */
+  public void trackSetpoint(double position, double velocity) {
+    if (isEnabled() || motionMagicActive) {
+      disable();
+    }
+    double output = trackingController.calculate(getPosition(), position);
+    double feedforward = feedforward(velocity, updateSetpointAcceleration(velocity));
+    setVoltage(feedforward + output);
+
+    setpointPositionLog.record(position);
+    setpointVelocityLog.record(velocity);
+    outputLog.record(feedforward + output);
   }
 
   @Override
   public void periodic() {
+    profile.start();
     super.periodic();
+    if (motionMagicActive) {
+      runMotionMagic();
+    }
     if (softLimitsEnabled) {
       if (getPosition() > ElevatorConstants.kTopLimit && rightElevator.getMotorOutputVoltage() > 0) {
         stop();
@@ -99,18 +267,30 @@ public class ProfiledPIDElevator extends ProfiledPIDSubsystem {
         stop();
       }
   }
-    Dashboard.Elevator.Debugging.putNumber("Elevator Current", getCurrent());
-    Dashboard.Elevator.Debugging.putNumber("Elevator Position", getPosition());
-    Dashboard.Elevator.Debugging.putNumber("Elevator Velocity", getVelocity());
-    Dashboard.Elevator.Debugging.putNumber("Elevator Voltage", leftElevator.getMotorOutputVoltage());
-    Dashboard.Elevator.Driver.putBoolean("Elevator Goal Reached", this.getController().atGoal());
+    currentEntry.set(getCurrent());
+    positionEntry.set(getPosition());
+    velocityEntry.set(getVelocity());
+    voltageEntry.set(leftElevator.getMotorOutputVoltage());
+    goalReachedEntry.set(this.getController().atGoal());
+
+    positionLog.record(getPosition());
+    velocityLog.record(getVelocity());
+    /* Raw, getCurrent() feeds the homing filter and must only be sampled once a loop */
+    currentLog.record((rightElevator.getStatorCurrent() + leftElevator.getStatorCurrent()) / 2.0);
+    profile.stop();
   }
 
   public void setVoltage(double voltage) {
     if (isZeroed) {
       voltage = MathUtil.clamp(voltage, -8, 8);
-      rightElevator.setVoltage(voltage);
-      leftElevator.setVoltage(voltage);
+      if (ElevatorConstants.kUseMotionMagic) {
+        /* Voltage compensation is on, so percent output is already in volts */
+        rightElevator.set(voltage / ElevatorConstants.kNominalVoltage);
+        leftElevator.set(voltage / ElevatorConstants.kNominalVoltage);
+      } else {
+        rightElevator.setVoltage(voltage);
+        leftElevator.setVoltage(voltage);
+      }
     } else {
       // System.out.println("ELEVATOR NOT ZEROED!");
       stop();
@@ -139,6 +319,10 @@ public class ProfiledPIDElevator extends ProfiledPIDSubsystem {
     return rightElevator.getSelectedSensorVelocity() * ElevatorConstants.kVelocityConversionFactor;
   }
 
+  public double getAppliedVoltage() {
+    return rightElevator.getMotorOutputVoltage();
+  }
+
   public double getCurrent() {
     return homingMovingAvg.calculate((rightElevator.getStatorCurrent() + leftElevator.getStatorCurrent()) / 2.0);
   }
@@ -161,7 +345,7 @@ public class ProfiledPIDElevator extends ProfiledPIDSubsystem {
   }
 
   public boolean atGoal() {
-    // Dashboard.Elevator.Driver.putBoolean("Elevator Goal Reached", this.getController().atGoal());
+    // goalReachedEntry.set(this.getController().atGoal());
     return Math.abs(getPosition() - this.getController().getGoal().position) <= 0.07;
 
   }
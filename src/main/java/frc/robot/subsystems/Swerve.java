@@ -1,32 +1,82 @@
 package frc.robot.subsystems;
 
+import frc.robot.LoopProfiler;
 import frc.robot.SwerveModule;
 import frc.robot.Constants;
+import frc.robot.Constants.LimelightConstants;
+import frc.robot.HeadingService;
+import frc.robot.OdometryThread;
+import frc.robot.Robot;
+import frc.robot.DeviceStartup;
+import frc.robot.RobotLog;
+import frc.robot.Telemetry;
+import frc.lib.math.SwerveKinematicsBuffer;
+import frc.lib.util.MutableSwerveModuleState;
 
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 
 import com.ctre.phoenix.sensors.Pigeon2;
+import com.ctre.phoenix.sensors.PigeonIMU_StatusFrame;
+
+import java.util.function.Supplier;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Preferences;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
 public class Swerve extends SubsystemBase {
-    public SwerveDriveOdometry swerveOdometry;
+    private final LoopProfiler.Section profile = LoopProfiler.section("Swerve periodic");
+
+    public OdometryThread odometryThread;
     public SwerveModule[] mSwerveMods;
     public Pigeon2 gyro;
+    public HeadingService heading;
+
+    private final SwerveKinematicsBuffer kinematicsBuffer = new SwerveKinematicsBuffer(Constants.Swerve.moduleLocations);
+    private final MutableSwerveModuleState[] moduleStateBuffer = MutableSwerveModuleState.createArray(4);
+    private final double[] chassisSpeedsBuffer = new double[3];
+    private boolean secondOrderKinematics = Constants.Swerve.secondOrderKinematics;
+
+    private Supplier<Limelight.PoseEstimate> visionSource = null;
+    /* The source returns the same estimate until the camera publishes a new frame */
+    private Limelight.PoseEstimate lastVisionEstimate = null;
+    /* False until the pose has been set from a path start or a first vision fix */
+    private boolean poseSeeded = false;
+    /* False until every module and the gyro are configured and the modules are reset to absolute */
+    private boolean ready = false;
+
+    private static final String gyroStartupName = "Pigeon";
+    private final String[] startupNames;
+    private boolean startupFailureReported = false;
+
+    private final Telemetry.Entry visionAcceptedEntry = Telemetry.bool("Vision Accepted");
+    private final Telemetry.Entry xPositionEntry = Telemetry.number("xPosition");
+    private final Telemetry.Entry yPositionEntry = Telemetry.number("yPosition");
+
+    private final RobotLog.Signal yawLog = RobotLog.number("Swerve/Gyro/Yaw");
+    private final RobotLog.Signal pitchLog = RobotLog.number("Swerve/Gyro/Pitch");
+    private final RobotLog.Signal rollLog = RobotLog.number("Swerve/Gyro/Roll");
+    private final RobotLog.Signal poseXLog = RobotLog.number("Swerve/Pose/X");
+    private final RobotLog.Signal poseYLog = RobotLog.number("Swerve/Pose/Y");
+    private final RobotLog.Signal poseRotationLog = RobotLog.number("Swerve/Pose/Rotation");
+    private final RobotLog.Signal visionAcceptedLog = RobotLog.bool("Swerve/VisionAccepted");
+
+    private final double[] slipRatios = new double[4];
+    private final Telemetry.Entry[] slipEntries = new Telemetry.Entry[4];
+    private final RobotLog.Signal[] slipLogs = new RobotLog.Signal[4];
 
     public Swerve() {
         gyro = new Pigeon2(Constants.Swerve.pigeonID);
-        gyro.configFactoryDefault();
-        zeroGyro();
+        Robot.startup.submit(gyroStartupName, () -> DeviceStartup.firstError(
+            gyro.configFactoryDefault(Constants.configTimeoutMs),
+            gyro.setStatusFramePeriod(PigeonIMU_StatusFrame.CondStatus_9_SixDeg_YPR, Constants.Swerve.odometryStatusFramePeriod, Constants.configTimeoutMs),
+            gyro.setStatusFramePeriod(PigeonIMU_StatusFrame.BiasedStatus_2_Gyro, Constants.Swerve.odometryStatusFramePeriod, Constants.configTimeoutMs),
+            gyro.setYaw(0, Constants.configTimeoutMs)));
 
         mSwerveMods = new SwerveModule[] {
             new SwerveModule(0, Constants.Swerve.Mod0.constants),
@@ -35,68 +85,234 @@ public class Swerve extends SubsystemBase {
             new SwerveModule(3, Constants.Swerve.Mod3.constants)
         };
 
-        /* By pausing init for a second before setting module offsets, we avoid a bug with inverting motors.
-         * See https://github.com/Team364/BaseFalconSwerve/issues/8 for more info.
-         */
-        Timer.delay(1.0);
+        startupNames = new String[mSwerveMods.length + 1];
+        startupNames[0] = gyroStartupName;
+        for (int i = 0; i < mSwerveMods.length; i++) {
+            startupNames[i + 1] = mSwerveMods[i].getStartupName();
+        }
+
+        for (int i = 0; i < mSwerveMods.length; i++) {
+            slipEntries[i] = Telemetry.number("Mod " + i + " Slip");
+            slipLogs[i] = RobotLog.number("Swerve/Mod" + i + "/Slip");
+        }
+        loadDriveGains();
+
+        /* Started from periodic() once the devices are ready */
+        heading = new HeadingService(gyro);
+        odometryThread = new OdometryThread(mSwerveMods, heading::sample);
+    }
+
+    /**
+     * Setting module offsets before the motor inversion has been applied hits a bug with inverting motors,
+     * so the reset waits until every module and the gyro configured successfully instead of sleeping for a fixed second.
+     * See https://github.com/Team364/BaseFalconSwerve/issues/8 for more info.
+     */
+    private boolean checkReady() {
+        boolean allReady = true;
+        for (String name : startupNames) {
+            if (Robot.startup.isReady(name)) {
+                continue;
+            }
+            allReady = false;
+            if (Robot.startup.isDone(name) && !startupFailureReported) {
+                /* Driving on a half configured module is worse than not driving */
+                DriverStation.reportError("Swerve stays disabled, " + name + " failed to configure", false);
+                startupFailureReported = true;
+            }
+        }
+        if (!allReady) {
+            return false;
+        }
         resetModulesToAbsolute();
+        odometryThread.resync();
+        odometryThread.start();
+        return true;
+    }
 
-        swerveOdometry = new SwerveDriveOdometry(Constants.Swerve.swerveKinematics, getYaw(), getModulePositions());
+    /** @return true once the drivetrain has been configured, drive requests are ignored until then */
+    public boolean isReady() {
+        return ready;
     }
 
     public void drive(Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop) {
-        SwerveModuleState[] swerveModuleStates =
-            Constants.Swerve.swerveKinematics.toSwerveModuleStates(
-                fieldRelative ? ChassisSpeeds.fromFieldRelativeSpeeds(
-                                    translation.getX(), 
-                                    translation.getY(), 
-                                    rotation, 
-                                    getYaw()
-                                )
-                                : new ChassisSpeeds(
-                                    translation.getX(), 
-                                    translation.getY(), 
-                                    rotation)
-                                );
-        SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, Constants.Swerve.maxSpeed);
+        drive(translation.getX(), translation.getY(), rotation, fieldRelative, isOpenLoop);
+    }
+
+    /* Allocation-free drive path, reuses the kinematics and module state buffers every loop */
+    public void drive(double xSpeed, double ySpeed, double rotation, boolean fieldRelative, boolean isOpenLoop) {
+        if (!ready) {
+            return;
+        }
+        double vx = xSpeed;
+        double vy = ySpeed;
+        if (fieldRelative) {
+            double yaw = Math.toRadians(heading.getYawDegrees());
+            double cos = Math.cos(yaw);
+            double sin = Math.sin(yaw);
+            vx = xSpeed * cos + ySpeed * sin;
+            vy = -xSpeed * sin + ySpeed * cos;
+        }
+        toModuleStates(vx, vy, rotation, moduleStateBuffer);
+        SwerveKinematicsBuffer.desaturateWheelSpeeds(moduleStateBuffer, Constants.Swerve.maxSpeed);
 
         for(SwerveModule mod : mSwerveMods){
-            mod.setDesiredState(swerveModuleStates[mod.moduleNumber], isOpenLoop);
+            mod.setDesiredState(moduleStateBuffer[mod.moduleNumber], isOpenLoop);
         }
     }    
 
+    private void toModuleStates(double vx, double vy, double omega, MutableSwerveModuleState[] out) {
+        if (secondOrderKinematics) {
+            kinematicsBuffer.toModuleStatesSecondOrder(vx, vy, omega, TimedRobot.kDefaultPeriod, out);
+        } else {
+            kinematicsBuffer.toModuleStates(vx, vy, omega, out);
+        }
+    }
+
+    /** Switches drive() and setModuleStates() between first and second order kinematics */
+    public void setSecondOrderKinematics(boolean enabled) {
+        secondOrderKinematics = enabled;
+    }
+
+    public boolean isSecondOrderKinematics() {
+        return secondOrderKinematics;
+    }
+
     /* Used by SwerveControllerCommand in Auto */
     public void setModuleStates(SwerveModuleState[] desiredStates) {
-        SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, Constants.Swerve.maxSpeed);
+        for(int i = 0; i < desiredStates.length; i++){
+            moduleStateBuffer[i].set(desiredStates[i].speedMetersPerSecond, desiredStates[i].angle.getDegrees());
+            moduleStateBuffer[i].steerRateRadiansPerSecond = 0.0;
+        }
+        setModuleStates(moduleStateBuffer, false);
+    }    
+
+    public void setModuleStates(MutableSwerveModuleState[] desiredStates, boolean isOpenLoop) {
+        if (!ready) {
+            return;
+        }
+        if (secondOrderKinematics) {
+            /* Recover the chassis speeds the states came from and redo them in second order */
+            kinematicsBuffer.toChassisSpeeds(desiredStates, chassisSpeedsBuffer);
+            toModuleStates(chassisSpeedsBuffer[0], chassisSpeedsBuffer[1], chassisSpeedsBuffer[2], desiredStates);
+        }
+        SwerveKinematicsBuffer.desaturateWheelSpeeds(desiredStates, Constants.Swerve.maxSpeed);
         
         for(SwerveModule mod : mSwerveMods){
-            mod.setDesiredState(desiredStates[mod.moduleNumber], false);
+            mod.setDesiredState(desiredStates[mod.moduleNumber], isOpenLoop);
         }
     }    
 
     public Pose2d getPose() {
-        return swerveOdometry.getPoseMeters();
+        return odometryThread.getPose();
     }
 
     public void resetOdometry(Pose2d pose) {
-        swerveOdometry.resetPosition(getYaw(), getModulePositions(), pose);
+        odometryThread.resetPose(pose);
+        poseSeeded = true;
+    }
+
+    public void setVisionSource(Supplier<Limelight.PoseEstimate> visionSource) {
+        this.visionSource = visionSource;
+    }
+
+    /**
+     * Fuses an AprilTag pose into the estimate unless it fails the outlier checks.
+     * @return true if the measurement was used
+     */
+    public boolean addVisionMeasurement(Limelight.PoseEstimate estimate) {
+        if (estimate == null || estimate.tagCount < 1) {
+            return false;
+        }
+        if (estimate.avgTagDistance > LimelightConstants.maxTagDistance) {
+            return false;
+        }
+        /* A single tag can resolve to its mirrored solution, only trust it up close */
+        if (estimate.tagCount == 1 && estimate.avgTagDistance > LimelightConstants.maxSingleTagDistance) {
+            return false;
+        }
+        Pose2d pose = estimate.pose;
+        if (pose.getX() < 0 || pose.getX() > LimelightConstants.fieldLength || pose.getY() < 0 || pose.getY() > LimelightConstants.fieldWidth) {
+            return false;
+        }
+        if (!poseSeeded) {
+            /* Take the first good fix outright, keeping the gyro heading */
+            resetOdometry(new Pose2d(pose.getTranslation(), getPose().getRotation()));
+            return true;
+        }
+        if (pose.getTranslation().getDistance(getPose().getTranslation()) > LimelightConstants.maxPoseJump) {
+            return false;
+        }
+
+        double scale = Math.max(1.0, estimate.avgTagDistance * estimate.avgTagDistance) / estimate.tagCount;
+        odometryThread.addVisionMeasurement(pose, estimate.timestamp, LimelightConstants.visionStdDevs.times(scale));
+        return true;
     }
 
     public void stopModules() {
-        SwerveModuleState[] swerveModuleStates =
-            Constants.Swerve.swerveKinematics.toSwerveModuleStates(
-                new ChassisSpeeds(
-                                    0, 
-                                    0, 
-                                    0)
-                                );
-        SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, Constants.Swerve.maxSpeed);
+        drive(0, 0, 0, false, true); //true or false idk
+    }
 
+    /** Drives every module straight ahead at a voltage, for characterization */
+    public void setDriveVoltage(double volts) {
+        if (!ready) {
+            return;
+        }
         for(SwerveModule mod : mSwerveMods){
-            mod.setDesiredState(swerveModuleStates[mod.moduleNumber], true); //true or false idk
+            mod.setDriveVoltage(volts);
         }
     }
 
+    /** @return Mean of the module drive distances, meters */
+    public double getDriveDistance() {
+        double sum = 0.0;
+        for(SwerveModule mod : mSwerveMods){
+            sum += mod.getDistanceMeters();
+        }
+        return sum / mSwerveMods.length;
+    }
+
+    /** @return Mean of the module drive velocities, meters per second */
+    public double getDriveVelocity() {
+        double sum = 0.0;
+        for(SwerveModule mod : mSwerveMods){
+            sum += mod.getVelocityMPS();
+        }
+        return sum / mSwerveMods.length;
+    }
+
+    /** @return Mean of the drive motor output voltages */
+    public double getDriveVoltage() {
+        double sum = 0.0;
+        for(SwerveModule mod : mSwerveMods){
+            sum += mod.getDriveVoltage();
+        }
+        return sum / mSwerveMods.length;
+    }
+
+    /** Reads the drive feedforward from Preferences, in volts, falling back to the one in Constants */
+    public void loadDriveGains() {
+        double kS = loadDriveGain("kS", Constants.Swerve.driveKS * 12);
+        double kV = loadDriveGain("kV", Constants.Swerve.driveKV * 12);
+        double kA = loadDriveGain("kA", Constants.Swerve.driveKA * 12);
+        for(SwerveModule mod : mSwerveMods){
+            mod.setDriveFeedforward(kS, kV, kA);
+        }
+    }
+
+    private static double loadDriveGain(String name, double defaultValue) {
+        String key = "Drive " + name;
+        Preferences.initDouble(key, defaultValue);
+        return Preferences.getDouble(key, defaultValue);
+    }
+
+    /** Stores characterized drive gains, in volts, in Preferences and starts using them */
+    public void saveDriveGains(double kS, double kV, double kA) {
+        Preferences.setDouble("Drive kS", kS);
+        Preferences.setDouble("Drive kV", kV);
+        Preferences.setDouble("Drive kA", kA);
+        loadDriveGains();
+    }
+
     public SwerveModuleState[] getModuleStates(){
         SwerveModuleState[] states = new SwerveModuleState[4];
         for(SwerveModule mod : mSwerveMods){
@@ -114,19 +330,20 @@ public class Swerve extends SubsystemBase {
     }
 
     public void zeroGyro(){
-        gyro.setYaw(0);
+        heading.reset(0);
     }
 
     public void setHeading(double Angle){
-        gyro.setYaw(Angle);
+        heading.reset(Angle);
     }
 
+    /** @return This loop's heading, read once and extrapolated by the heading service */
     public Rotation2d getYaw() {
-        return (Constants.Swerve.invertGyro) ? Rotation2d.fromDegrees(360 - gyro.getYaw()) : Rotation2d.fromDegrees(gyro.getYaw());
+        return heading.getYaw();
     }
 
     public double getYawDouble() {
-        return (Constants.Swerve.invertGyro) ? (360 - gyro.getYaw()) : (gyro.getYaw());
+        return heading.getYawDegrees();
     }
 
     public double getRoll() {
@@ -141,15 +358,48 @@ public class Swerve extends SubsystemBase {
 
     @Override
     public void periodic(){
-        swerveOdometry.update(getYaw(), getModulePositions());  
+        profile.start();
+        heading.refresh();
+        if (!ready) {
+            ready = checkReady();
+        }
 
-        SmartDashboard.putNumber("xPosition", getPose().getX());
-        SmartDashboard.putNumber("yPosition", getPose().getY());
+        /* Subsystem periodic runs before commands execute, so every consumer this loop shares one snapshot */
+        for(SwerveModule mod : mSwerveMods){
+            mod.refreshSensors();
+        }
+
+        if (visionSource != null) {
+            Limelight.PoseEstimate estimate = visionSource.get();
+            if (estimate != lastVisionEstimate) {
+                lastVisionEstimate = estimate;
+                boolean accepted = addVisionMeasurement(estimate);
+                visionAcceptedEntry.set(accepted);
+                visionAcceptedLog.record(accepted);
+            }
+        }
+
+        Pose2d pose = getPose();
+        xPositionEntry.set(pose.getX());
+        yPositionEntry.set(pose.getY());
+
+        poseXLog.record(pose.getX());
+        poseYLog.record(pose.getY());
+        poseRotationLog.record(pose.getRotation().getDegrees());
+        yawLog.record(getYawDouble());
+        pitchLog.record(gyro.getPitch());
+        rollLog.record(gyro.getRoll());
+
+        /* Worst slip each module saw across the odometry samples since the last loop */
+        odometryThread.copySlipRatios(slipRatios);
+        for (int i = 0; i < mSwerveMods.length; i++) {
+            slipEntries[i].set(slipRatios[i]);
+            slipLogs[i].record(slipRatios[i]);
+        }
 
         for(SwerveModule mod : mSwerveMods){
-            SmartDashboard.putNumber("Mod " + mod.moduleNumber + " Cancoder", mod.getCanCoder().getDegrees());
-            SmartDashboard.putNumber("Mod " + mod.moduleNumber + " Integrated", mod.getPosition().angle.getDegrees());
-            SmartDashboard.putNumber("Mod " + mod.moduleNumber + " Velocity", mod.getState().speedMetersPerSecond);    
+            mod.publishTelemetry();
         }
+        profile.stop();
     }
 }
\ No newline at end of file
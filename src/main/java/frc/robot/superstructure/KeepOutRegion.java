@@ -0,0 +1,54 @@
+package frc.robot.superstructure;
+
+/** Box in joint space the arm and elevator may not pass through together, e.g. the arm pointing into the bumper. */
+public class KeepOutRegion {
+    public final String name;
+    public final double minArm;
+    public final double maxArm;
+    public final double minElevator;
+    public final double maxElevator;
+
+    /**
+     * @param minArm Radians
+     * @param maxArm Radians
+     * @param minElevator Meters
+     * @param maxElevator Meters
+     */
+    public KeepOutRegion(String name, double minArm, double maxArm, double minElevator, double maxElevator) {
+        this.name = name;
+        this.minArm = minArm;
+        this.maxArm = maxArm;
+        this.minElevator = minElevator;
+        this.maxElevator = maxElevator;
+    }
+
+    /** @return true if the point is strictly inside */
+    public boolean contains(double arm, double elevator) {
+        return arm > minArm && arm < maxArm && elevator > minElevator && elevator < maxElevator;
+    }
+
+    /** @return true if the straight segment between two points passes through the inside */
+    public boolean intersects(double arm0, double elevator0, double arm1, double elevator1) {
+        /* Liang-Barsky clip of the segment against the box */
+        double enter = 0.0;
+        double exit = 1.0;
+        double[] p = {-(arm1 - arm0), arm1 - arm0, -(elevator1 - elevator0), elevator1 - elevator0};
+        double[] q = {arm0 - minArm, maxArm - arm0, elevator0 - minElevator, maxElevator - elevator0};
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0.0) {
+                if (q[i] <= 0.0) {
+                    return false;
+                }
+            } else {
+                double r = q[i] / p[i];
+                if (p[i] < 0.0) {
+                    enter = Math.max(enter, r);
+                } else {
+                    exit = Math.min(exit, r);
+                }
+            }
+        }
+        /* Only touching an edge or a corner doesn't count */
+        return exit - enter > 1e-9;
+    }
+}
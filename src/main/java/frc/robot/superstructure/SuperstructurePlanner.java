@@ -0,0 +1,229 @@
+package frc.robot.superstructure;
+
+import java.util.Arrays;
+
+import frc.robot.Constants.ElevatorConstants;
+import frc.robot.Constants.NewArmConstants;
+import frc.robot.Constants.SuperstructureConstants;
+
+/**
+ * Plans coordinated arm and elevator moves in joint space around keep-out regions. Every region is
+ * expanded by a margin, and candidate waypoints are the corners of the expanded regions. The planner
+ * searches the graph of straight segments between the start, the goal and those corners that stay
+ * out of every expanded region for the path with the least total time, where each segment's time is
+ * that of its synchronized trapezoid profile. A move that is clear in a straight line is a single
+ * segment, which is time optimal for a rest to rest move along that line.
+ *
+ * When the start or the goal is within the margin of a region, only the region itself is avoided
+ * for that move, and a region that contains the start or the goal is ignored, since there is no way
+ * around it.
+ */
+public class SuperstructurePlanner {
+    private final KeepOutRegion[] regions;
+    /* Regions grown by the margin on every side, their corners are the waypoints */
+    private final KeepOutRegion[] expandedRegions;
+    private final double[] armLimits;
+    private final double[] elevatorLimits;
+    private final double minArm;
+    private final double maxArm;
+    private final double minElevator;
+    private final double maxElevator;
+    private final double margin;
+
+    /* Candidate waypoints, start and goal are filled into slots 0 and 1 for each plan */
+    private final double[] nodeArm;
+    private final double[] nodeElevator;
+    /* Corners past a joint limit, a region that reaches the limit can't be passed on that side */
+    private final boolean[] outOfReach;
+
+    /**
+     * @param armLimits {max velocity, max acceleration}, radians
+     * @param elevatorLimits {max velocity, max acceleration}, meters
+     * @param jointLimits {min arm, max arm, min elevator, max elevator}
+     * @param margin Clearance kept around each region, radians for the arm and meters for the elevator
+     */
+    public SuperstructurePlanner(KeepOutRegion[] regions, double[] armLimits, double[] elevatorLimits, double[] jointLimits, double margin) {
+        this.regions = regions.clone();
+        this.armLimits = armLimits.clone();
+        this.elevatorLimits = elevatorLimits.clone();
+        this.minArm = jointLimits[0];
+        this.maxArm = jointLimits[1];
+        this.minElevator = jointLimits[2];
+        this.maxElevator = jointLimits[3];
+        this.margin = margin;
+
+        expandedRegions = new KeepOutRegion[regions.length];
+        nodeArm = new double[2 + 4 * regions.length];
+        nodeElevator = new double[nodeArm.length];
+        outOfReach = new boolean[nodeArm.length];
+        for (int i = 0; i < regions.length; i++) {
+            KeepOutRegion region = regions[i];
+            KeepOutRegion expanded = new KeepOutRegion(region.name, region.minArm - margin, region.maxArm + margin,
+                region.minElevator - margin, region.maxElevator + margin);
+            expandedRegions[i] = expanded;
+            setCorner(2 + 4 * i, expanded.minArm, expanded.minElevator);
+            setCorner(3 + 4 * i, expanded.maxArm, expanded.minElevator);
+            setCorner(4 + 4 * i, expanded.maxArm, expanded.maxElevator);
+            setCorner(5 + 4 * i, expanded.minArm, expanded.maxElevator);
+        }
+    }
+
+    /** @return Planner with the robot's keep-out regions, joint limits and profile constraints */
+    public static SuperstructurePlanner fromConstants() {
+        return new SuperstructurePlanner(
+            SuperstructureConstants.kKeepOutRegions,
+            new double[] {NewArmConstants.kMaxVel, NewArmConstants.kMaxAcc},
+            new double[] {ElevatorConstants.kMaxVel, ElevatorConstants.kMaxAcc},
+            new double[] {NewArmConstants.kBottomLimit, NewArmConstants.kTopLimit, ElevatorConstants.kBottomLimit, ElevatorConstants.kTopLimit},
+            SuperstructureConstants.kKeepOutMargin);
+    }
+
+    private void setCorner(int node, double arm, double elevator) {
+        nodeArm[node] = arm;
+        nodeElevator[node] = elevator;
+        outOfReach[node] = arm < minArm || arm > maxArm || elevator < minElevator || elevator > maxElevator;
+    }
+
+    /** @return The region the point is inside, or null */
+    public KeepOutRegion regionAt(double arm, double elevator) {
+        for (KeepOutRegion region : regions) {
+            if (region.contains(arm, elevator)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Plans the fastest collision free move between two joint positions.
+     * @param armStart Radians
+     * @param elevatorStart Meters
+     * @param armGoal Radians
+     * @param elevatorGoal Meters
+     */
+    public synchronized SuperstructureTrajectory plan(double armStart, double elevatorStart, double armGoal, double elevatorGoal) {
+        /* What each region keeps out for this move, null when it is ignored */
+        KeepOutRegion[] active = new KeepOutRegion[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            if (!expandedRegions[i].contains(armStart, elevatorStart) && !expandedRegions[i].contains(armGoal, elevatorGoal)) {
+                active[i] = expandedRegions[i];
+            } else if (!regions[i].contains(armStart, elevatorStart) && !regions[i].contains(armGoal, elevatorGoal)) {
+                active[i] = regions[i];
+            }
+        }
+
+        int nodes = nodeArm.length;
+        nodeArm[0] = armStart;
+        nodeElevator[0] = elevatorStart;
+        nodeArm[1] = armGoal;
+        nodeElevator[1] = elevatorGoal;
+
+        /* A corner out of reach or inside another region can't be used */
+        boolean[] usable = new boolean[nodes];
+        usable[0] = true;
+        usable[1] = true;
+        for (int n = 2; n < nodes; n++) {
+            usable[n] = active[(n - 2) / 4] != null && !outOfReach[n] && !insideActive(active, nodeArm[n], nodeElevator[n]);
+        }
+
+        /* Dijkstra over the dense visibility graph, there are only a handful of nodes */
+        double[] time = new double[nodes];
+        int[] previous = new int[nodes];
+        boolean[] done = new boolean[nodes];
+        Arrays.fill(time, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+        time[0] = 0.0;
+        while (true) {
+            int current = -1;
+            for (int n = 0; n < nodes; n++) {
+                if (usable[n] && !done[n] && time[n] < Double.POSITIVE_INFINITY && (current < 0 || time[n] < time[current])) {
+                    current = n;
+                }
+            }
+            if (current < 0 || current == 1) {
+                break;
+            }
+            done[current] = true;
+            for (int n = 0; n < nodes; n++) {
+                if (!usable[n] || done[n] || !clear(active, current, n)) {
+                    continue;
+                }
+                double candidate = time[current] + SuperstructureTrajectory.segmentTime(
+                    nodeArm[n] - nodeArm[current], nodeElevator[n] - nodeElevator[current], armLimits, elevatorLimits);
+                if (candidate < time[n]) {
+                    time[n] = candidate;
+                    previous[n] = current;
+                }
+            }
+        }
+
+        if (previous[1] < 0) {
+            /* Boxed in, moving straight is the best that can be done */
+            return straight(armStart, elevatorStart, armGoal, elevatorGoal);
+        }
+
+        int count = 1;
+        for (int n = 1; n != 0; n = previous[n]) {
+            count++;
+        }
+        double[] arm = new double[count];
+        double[] elevator = new double[count];
+        int n = 1;
+        for (int index = count - 1; index >= 0; index--) {
+            arm[index] = nodeArm[n];
+            elevator[index] = nodeElevator[n];
+            n = previous[n];
+        }
+        return new SuperstructureTrajectory(arm, elevator, armLimits, elevatorLimits);
+    }
+
+    /** @return A single segment move, ignoring the keep-out regions */
+    public SuperstructureTrajectory straight(double armStart, double elevatorStart, double armGoal, double elevatorGoal) {
+        return new SuperstructureTrajectory(
+            new double[] {armStart, armGoal}, new double[] {elevatorStart, elevatorGoal}, armLimits, elevatorLimits);
+    }
+
+    private boolean insideActive(KeepOutRegion[] active, double arm, double elevator) {
+        for (KeepOutRegion region : active) {
+            if (region != null && region.contains(arm, elevator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean clear(KeepOutRegion[] active, int from, int to) {
+        for (KeepOutRegion region : active) {
+            if (region != null && region.intersects(nodeArm[from], nodeElevator[from], nodeArm[to], nodeElevator[to])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Hash of everything that changes the plans, so stored plans can be checked against it */
+    public long fingerprint() {
+        long hash = 17;
+        for (KeepOutRegion region : regions) {
+            hash = mix(hash, region.minArm, region.maxArm, region.minElevator, region.maxElevator);
+        }
+        hash = mix(hash, armLimits[0], armLimits[1], elevatorLimits[0], elevatorLimits[1]);
+        return mix(hash, minArm, maxArm, minElevator, maxElevator, margin);
+    }
+
+    /** @return hash with the values folded in */
+    public static long mix(long hash, double... values) {
+        for (double value : values) {
+            hash = 31 * hash + Double.doubleToLongBits(value);
+        }
+        return hash;
+    }
+
+    public double[] getArmLimits() {
+        return armLimits.clone();
+    }
+
+    public double[] getElevatorLimits() {
+        return elevatorLimits.clone();
+    }
+}
@@ -0,0 +1,165 @@
+package frc.robot.superstructure;
+
+/**
+ * Coordinated arm and elevator move through joint space, made of straight segments between
+ * waypoints. Each segment is one trapezoid profile along the segment, so both joints start and stop
+ * together and stay on the line between the waypoints, which is what keeps the move clear of the
+ * keep-out regions. The robot comes to rest at every waypoint.
+ */
+public class SuperstructureTrajectory {
+    private final double[] armWaypoints;
+    private final double[] elevatorWaypoints;
+    /* Per segment: start time, and the profile over the segment fraction 0 to 1 */
+    private final double[] startTimes;
+    private final double[] maxRates;
+    private final double[] accelerations;
+    private final double[] accelerationTimes;
+    private final double[] durations;
+    private final double totalTime;
+
+    /** Mutable joint setpoint, filled in by sample() so callers can reuse one instance. */
+    public static class State {
+        public double armRadians;
+        public double armRadiansPerSecond;
+        public double elevatorMeters;
+        public double elevatorMetersPerSecond;
+    }
+
+    /**
+     * @param armWaypoints Radians, including the start and the goal
+     * @param elevatorWaypoints Meters, same length as armWaypoints
+     * @param armLimits {max velocity, max acceleration}
+     * @param elevatorLimits {max velocity, max acceleration}
+     */
+    public SuperstructureTrajectory(double[] armWaypoints, double[] elevatorWaypoints, double[] armLimits, double[] elevatorLimits) {
+        if (armWaypoints.length != elevatorWaypoints.length || armWaypoints.length < 1) {
+            throw new IllegalArgumentException("Arm and elevator need the same, nonzero number of waypoints");
+        }
+        this.armWaypoints = armWaypoints.clone();
+        this.elevatorWaypoints = elevatorWaypoints.clone();
+
+        int segments = armWaypoints.length - 1;
+        startTimes = new double[segments];
+        maxRates = new double[segments];
+        accelerations = new double[segments];
+        accelerationTimes = new double[segments];
+        durations = new double[segments];
+
+        double time = 0.0;
+        for (int i = 0; i < segments; i++) {
+            double armDelta = Math.abs(armWaypoints[i + 1] - armWaypoints[i]);
+            double elevatorDelta = Math.abs(elevatorWaypoints[i + 1] - elevatorWaypoints[i]);
+            /* Fraction of the segment per second, the joint that would exceed its limits first sets the pace */
+            double maxRate = Math.min(rateLimit(armLimits[0], armDelta), rateLimit(elevatorLimits[0], elevatorDelta));
+            double acceleration = Math.min(rateLimit(armLimits[1], armDelta), rateLimit(elevatorLimits[1], elevatorDelta));
+
+            startTimes[i] = time;
+            if (Double.isInfinite(maxRate) || Double.isInfinite(acceleration)) {
+                /* Both joints are already there */
+                maxRates[i] = 0.0;
+                accelerations[i] = 0.0;
+                accelerationTimes[i] = 0.0;
+                durations[i] = 0.0;
+                continue;
+            }
+            if (maxRate * maxRate / acceleration > 1.0) {
+                /* Never reaches the max rate, triangle profile */
+                maxRate = Math.sqrt(acceleration);
+            }
+            maxRates[i] = maxRate;
+            accelerations[i] = acceleration;
+            accelerationTimes[i] = maxRate / acceleration;
+            durations[i] = 1.0 / maxRate + maxRate / acceleration;
+            time += durations[i];
+        }
+        totalTime = time;
+    }
+
+    private static double rateLimit(double limit, double delta) {
+        return delta < 1e-9 ? Double.POSITIVE_INFINITY : limit / delta;
+    }
+
+    /** @return Time it would take to move straight between two points, without building a trajectory */
+    public static double segmentTime(double armDelta, double elevatorDelta, double[] armLimits, double[] elevatorLimits) {
+        armDelta = Math.abs(armDelta);
+        elevatorDelta = Math.abs(elevatorDelta);
+        double maxRate = Math.min(rateLimit(armLimits[0], armDelta), rateLimit(elevatorLimits[0], elevatorDelta));
+        double acceleration = Math.min(rateLimit(armLimits[1], armDelta), rateLimit(elevatorLimits[1], elevatorDelta));
+        if (Double.isInfinite(maxRate) || Double.isInfinite(acceleration)) {
+            return 0.0;
+        }
+        if (maxRate * maxRate / acceleration > 1.0) {
+            return 2.0 / Math.sqrt(acceleration);
+        }
+        return 1.0 / maxRate + maxRate / acceleration;
+    }
+
+    /**
+     * Fills in the setpoint at a time, holding the goal after the end.
+     * @param timeSeconds Since the start of the move
+     */
+    public void sample(double timeSeconds, State out) {
+        int segment = startTimes.length - 1;
+        while (segment > 0 && startTimes[segment] > timeSeconds) {
+            segment--;
+        }
+        if (segment < 0 || timeSeconds >= totalTime) {
+            int last = armWaypoints.length - 1;
+            out.armRadians = armWaypoints[last];
+            out.elevatorMeters = elevatorWaypoints[last];
+            out.armRadiansPerSecond = 0.0;
+            out.elevatorMetersPerSecond = 0.0;
+            return;
+        }
+
+        double t = Math.max(timeSeconds - startTimes[segment], 0.0);
+        double duration = durations[segment];
+        double fraction;
+        double rate;
+        if (duration == 0.0) {
+            fraction = 1.0;
+            rate = 0.0;
+        } else if (t < accelerationTimes[segment]) {
+            fraction = 0.5 * accelerations[segment] * t * t;
+            rate = accelerations[segment] * t;
+        } else if (t < duration - accelerationTimes[segment]) {
+            fraction = 0.5 * maxRates[segment] * accelerationTimes[segment] + maxRates[segment] * (t - accelerationTimes[segment]);
+            rate = maxRates[segment];
+        } else {
+            double remaining = Math.max(duration - t, 0.0);
+            fraction = 1.0 - 0.5 * accelerations[segment] * remaining * remaining;
+            rate = accelerations[segment] * remaining;
+        }
+
+        double armDelta = armWaypoints[segment + 1] - armWaypoints[segment];
+        double elevatorDelta = elevatorWaypoints[segment + 1] - elevatorWaypoints[segment];
+        out.armRadians = armWaypoints[segment] + armDelta * fraction;
+        out.elevatorMeters = elevatorWaypoints[segment] + elevatorDelta * fraction;
+        out.armRadiansPerSecond = armDelta * rate;
+        out.elevatorMetersPerSecond = elevatorDelta * rate;
+    }
+
+    public double getTotalTimeSeconds() {
+        return totalTime;
+    }
+
+    public int getWaypointCount() {
+        return armWaypoints.length;
+    }
+
+    public double getArmWaypoint(int index) {
+        return armWaypoints[index];
+    }
+
+    public double getElevatorWaypoint(int index) {
+        return elevatorWaypoints[index];
+    }
+
+    public double getArmGoal() {
+        return armWaypoints[armWaypoints.length - 1];
+    }
+
+    public double getElevatorGoal() {
+        return elevatorWaypoints[elevatorWaypoints.length - 1];
+    }
+}
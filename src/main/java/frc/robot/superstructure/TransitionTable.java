@@ -0,0 +1,153 @@
+package frc.robot.superstructure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Preset;
+import frc.robot.Constants.SuperstructureConstants;
+
+/**
+ * Planned move between every pair of presets, generated at build time by TransitionTableCompiler
+ * and loaded at startup, so a preset to preset move costs a lookup instead of a plan. Only
+ * waypoints are stored; the profiles are rebuilt from them once at load.
+ *
+ * The file records a fingerprint of the presets and the planner settings. If it is missing or was
+ * generated for different ones, the table is planned in memory at startup instead.
+ *
+ * File layout, big endian:
+ * header {int magic, int version, int presetCount, long fingerprint},
+ * presetCount * presetCount moves, from major, each {int waypointCount, waypointCount arm doubles, waypointCount elevator doubles}.
+ */
+public class TransitionTable {
+    public static final int magic = 0x46525354; // "FRST"
+    /* Also bumped when the planner changes, which the fingerprint doesn't see */
+    public static final int version = 2;
+    public static final String fileName = "transitions.bin";
+
+    private final Preset[] presets;
+    /* Indexed [from * presets.length + to] */
+    private final SuperstructureTrajectory[] moves;
+    private final double tolerance;
+
+    private TransitionTable(Preset[] presets, SuperstructureTrajectory[] moves) {
+        this.presets = presets.clone();
+        this.moves = moves;
+        this.tolerance = SuperstructureConstants.kPresetTolerance;
+    }
+
+    /** @return Hash of the preset positions and everything the planner uses */
+    public static long fingerprint(SuperstructurePlanner planner, Preset[] presets) {
+        long hash = planner.fingerprint();
+        for (Preset preset : presets) {
+            hash = SuperstructurePlanner.mix(hash, preset.kArmPos, preset.kElevatorPos);
+        }
+        return hash;
+    }
+
+    /** Plans every move, for the build time generator and as the fallback at startup. */
+    public static TransitionTable plan(SuperstructurePlanner planner, Preset[] presets) {
+        SuperstructureTrajectory[] moves = new SuperstructureTrajectory[presets.length * presets.length];
+        for (int from = 0; from < presets.length; from++) {
+            for (int to = 0; to < presets.length; to++) {
+                moves[from * presets.length + to] = planner.plan(
+                    presets[from].kArmPos, presets[from].kElevatorPos, presets[to].kArmPos, presets[to].kElevatorPos);
+            }
+        }
+        return new TransitionTable(presets, moves);
+    }
+
+    public void write(Path file, long fingerprint) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(presets.length);
+            out.writeLong(fingerprint);
+            for (SuperstructureTrajectory move : moves) {
+                int count = move.getWaypointCount();
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeDouble(move.getArmWaypoint(i));
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeDouble(move.getElevatorWaypoint(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the table generated at build time from the deploy directory, or plans it if that one is
+     * missing or stale.
+     */
+    public static TransitionTable load(SuperstructurePlanner planner, Preset[] presets) {
+        Path file = Filesystem.getDeployDirectory().toPath().resolve("superstructure").resolve(fileName);
+        long fingerprint = fingerprint(planner, presets);
+        try {
+            return read(file, planner, presets, fingerprint);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Planning preset transitions at startup: " + e.getMessage(), false);
+            return plan(planner, presets);
+        }
+    }
+
+    private static TransitionTable read(Path file, SuperstructurePlanner planner, Preset[] presets, long fingerprint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != magic || in.readInt() != version) {
+                throw new IOException(file + " is not a transition table of version " + version);
+            }
+            if (in.readInt() != presets.length || in.readLong() != fingerprint) {
+                throw new IOException(file + " was generated for other presets or planner settings");
+            }
+            double[] armLimits = planner.getArmLimits();
+            double[] elevatorLimits = planner.getElevatorLimits();
+            SuperstructureTrajectory[] moves = new SuperstructureTrajectory[presets.length * presets.length];
+            for (int i = 0; i < moves.length; i++) {
+                int count = in.readInt();
+                double[] arm = new double[count];
+                double[] elevator = new double[count];
+                for (int j = 0; j < count; j++) {
+                    arm[j] = in.readDouble();
+                }
+                for (int j = 0; j < count; j++) {
+                    elevator[j] = in.readDouble();
+                }
+                moves[i] = new SuperstructureTrajectory(arm, elevator, armLimits, elevatorLimits);
+            }
+            return new TransitionTable(presets, moves);
+        }
+    }
+
+    /**
+     * @param armGoal Radians, must be one of the presets exactly
+     * @param elevatorGoal Meters, must be one of the presets exactly
+     * @return The stored move, or null when the start isn't at a preset or the goal isn't one
+     */
+    public SuperstructureTrajectory lookup(double armStart, double elevatorStart, double armGoal, double elevatorGoal) {
+        int to = -1;
+        int from = -1;
+        double closest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < presets.length; i++) {
+            Preset preset = presets[i];
+            if (to < 0 && preset.kArmPos == armGoal && preset.kElevatorPos == elevatorGoal) {
+                to = i;
+            }
+            double armError = Math.abs(preset.kArmPos - armStart);
+            double elevatorError = Math.abs(preset.kElevatorPos - elevatorStart);
+            if (armError <= tolerance && elevatorError <= tolerance && armError + elevatorError < closest) {
+                closest = armError + elevatorError;
+                from = i;
+            }
+        }
+        if (to < 0 || from < 0) {
+            return null;
+        }
+        return moves[from * presets.length + to];
+    }
+}
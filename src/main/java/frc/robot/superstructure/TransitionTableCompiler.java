@@ -0,0 +1,29 @@
+package frc.robot.superstructure;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import frc.robot.Preset;
+import frc.robot.Constants.Presets;
+
+/**
+ * Build time entry point for the compileTransitions Gradle task. Plans the move between every pair
+ * of presets in Presets.kAll and writes the transition table, which is deployed to deploy/superstructure.
+ */
+public final class TransitionTableCompiler {
+
+    private TransitionTableCompiler() {}
+
+    /** @param args Output directory */
+    public static void main(String[] args) throws IOException {
+        Path output = Paths.get(args.length > 0 ? args[0] : "build/compiledTransitions");
+        Files.createDirectories(output);
+
+        SuperstructurePlanner planner = SuperstructurePlanner.fromConstants();
+        Preset[] presets = Presets.kAll;
+        TransitionTable.plan(planner, presets).write(output.resolve(TransitionTable.fileName), TransitionTable.fingerprint(planner, presets));
+        System.out.println("Compiled " + presets.length * presets.length + " preset transitions to " + output.toAbsolutePath());
+    }
+}
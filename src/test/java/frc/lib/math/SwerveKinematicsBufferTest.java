@@ -0,0 +1,137 @@
+package frc.lib.math;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.lib.util.MutableSwerveModuleState;
+
+import org.junit.jupiter.api.Test;
+
+/** Checks SwerveKinematicsBuffer against the WPILib SwerveDriveKinematics it stands in for. */
+class SwerveKinematicsBufferTest {
+    private static final int cases = 10_000;
+    private static final double epsilon = 1e-9;
+
+    /* A square chassis like the robot's, and a lopsided one whose modules aren't centered */
+    private static final Translation2d[][] layouts = {
+        {
+            new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3),
+            new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3)
+        },
+        {
+            new Translation2d(0.5, 0.2), new Translation2d(0.1, -0.4),
+            new Translation2d(-0.3, 0.35), new Translation2d(-0.2, -0.1)
+        },
+    };
+
+    private static double randomSpeed(Random random) {
+        return (random.nextDouble() * 2 - 1) * 5.0;
+    }
+
+    private static void assertSameAngle(double expectedDegrees, double actualDegrees, String message) {
+        /* -180 and 180 are the same heading */
+        assertEquals(0.0, Math.IEEEremainder(expectedDegrees - actualDegrees, 360.0), epsilon, message);
+    }
+
+    private static void assertSameStates(SwerveModuleState[] expected, MutableSwerveModuleState[] actual, String message) {
+        assertEquals(expected.length, actual.length, message);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].speedMetersPerSecond, actual[i].speedMetersPerSecond, epsilon, message + " module " + i);
+            assertSameAngle(expected[i].angle.getDegrees(), actual[i].angleDegrees, message + " module " + i);
+        }
+    }
+
+    @Test
+    void toModuleStatesMatchesWPILib() {
+        Random random = new Random(18);
+        for (Translation2d[] layout : layouts) {
+            SwerveDriveKinematics kinematics = new SwerveDriveKinematics(layout);
+            SwerveKinematicsBuffer buffer = new SwerveKinematicsBuffer(layout);
+            MutableSwerveModuleState[] states = MutableSwerveModuleState.createArray(layout.length);
+            for (int i = 0; i < cases; i++) {
+                double vx = randomSpeed(random);
+                double vy = randomSpeed(random);
+                double omega = randomSpeed(random);
+                buffer.toModuleStates(vx, vy, omega, states);
+                assertSameStates(kinematics.toSwerveModuleStates(new ChassisSpeeds(vx, vy, omega)), states,
+                    "vx " + vx + " vy " + vy + " omega " + omega);
+            }
+
+            /* Stopping keeps the last angles in both */
+            buffer.toModuleStates(0.0, 0.0, 0.0, states);
+            assertSameStates(kinematics.toSwerveModuleStates(new ChassisSpeeds()), states, "stopped");
+        }
+    }
+
+    @Test
+    void toChassisSpeedsMatchesWPILib() {
+        Random random = new Random(19);
+        for (Translation2d[] layout : layouts) {
+            SwerveDriveKinematics kinematics = new SwerveDriveKinematics(layout);
+            SwerveKinematicsBuffer buffer = new SwerveKinematicsBuffer(layout);
+            MutableSwerveModuleState[] states = MutableSwerveModuleState.createArray(layout.length);
+            SwerveModuleState[] wpilibStates = new SwerveModuleState[layout.length];
+            double[] speeds = new double[3];
+            for (int i = 0; i < cases; i++) {
+                /* Arbitrary states, so the fit is a real least squares and not an exact inverse */
+                for (int j = 0; j < layout.length; j++) {
+                    double speed = randomSpeed(random);
+                    double angle = random.nextDouble() * 360 - 180;
+                    states[j].set(speed, angle);
+                    wpilibStates[j] = new SwerveModuleState(speed, Rotation2d.fromDegrees(angle));
+                }
+                buffer.toChassisSpeeds(states, speeds);
+                ChassisSpeeds expected = kinematics.toChassisSpeeds(wpilibStates);
+                assertEquals(expected.vxMetersPerSecond, speeds[0], epsilon);
+                assertEquals(expected.vyMetersPerSecond, speeds[1], epsilon);
+                assertEquals(expected.omegaRadiansPerSecond, speeds[2], epsilon);
+            }
+        }
+    }
+
+    @Test
+    void desaturateWheelSpeedsMatchesWPILib() {
+        Random random = new Random(20);
+        for (int i = 0; i < cases; i++) {
+            double maxSpeed = random.nextDouble() * 5.0;
+            MutableSwerveModuleState[] states = MutableSwerveModuleState.createArray(4);
+            SwerveModuleState[] wpilibStates = new SwerveModuleState[4];
+            for (int j = 0; j < 4; j++) {
+                double speed = randomSpeed(random);
+                double angle = random.nextDouble() * 360 - 180;
+                states[j].set(speed, angle);
+                wpilibStates[j] = new SwerveModuleState(speed, Rotation2d.fromDegrees(angle));
+            }
+            SwerveKinematicsBuffer.desaturateWheelSpeeds(states, maxSpeed);
+            SwerveDriveKinematics.desaturateWheelSpeeds(wpilibStates, maxSpeed);
+            assertSameStates(wpilibStates, states, "max speed " + maxSpeed);
+        }
+    }
+
+    @Test
+    void secondOrderMatchesFirstOrderWithoutRotation() {
+        Random random = new Random(21);
+        for (Translation2d[] layout : layouts) {
+            SwerveKinematicsBuffer buffer = new SwerveKinematicsBuffer(layout);
+            MutableSwerveModuleState[] firstOrder = MutableSwerveModuleState.createArray(layout.length);
+            MutableSwerveModuleState[] secondOrder = MutableSwerveModuleState.createArray(layout.length);
+            for (int i = 0; i < cases; i++) {
+                double vx = randomSpeed(random);
+                double vy = randomSpeed(random);
+                buffer.toModuleStates(vx, vy, 0.0, firstOrder);
+                buffer.toModuleStatesSecondOrder(vx, vy, 0.0, 0.02, secondOrder);
+                for (int j = 0; j < layout.length; j++) {
+                    assertEquals(firstOrder[j].speedMetersPerSecond, secondOrder[j].speedMetersPerSecond);
+                    assertEquals(firstOrder[j].angleDegrees, secondOrder[j].angleDegrees);
+                    assertEquals(0.0, secondOrder[j].steerRateRadiansPerSecond);
+                }
+            }
+        }
+    }
+}
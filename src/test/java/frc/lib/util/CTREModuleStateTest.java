@@ -0,0 +1,98 @@
+package frc.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Checks placeInAppropriate0To360Scope() bit for bit against the stepping loops it replaced. */
+class CTREModuleStateTest {
+    private static final int casesPerRange = 100_000;
+
+    /* The implementation before the constant time rewrite, kept verbatim as the reference */
+    private static double reference(double scopeReference, double newAngle) {
+        double lowerBound;
+        double upperBound;
+        double lowerOffset = scopeReference % 360;
+        if (lowerOffset >= 0) {
+            lowerBound = scopeReference - lowerOffset;
+            upperBound = scopeReference + (360 - lowerOffset);
+        } else {
+            upperBound = scopeReference - lowerOffset;
+            lowerBound = scopeReference - (360 + lowerOffset);
+        }
+        while (newAngle < lowerBound) {
+            newAngle += 360;
+        }
+        while (newAngle > upperBound) {
+            newAngle -= 360;
+        }
+        if (newAngle - scopeReference > 180) {
+            newAngle -= 360;
+        } else if (newAngle - scopeReference < -180) {
+            newAngle += 360;
+        }
+        return newAngle;
+    }
+
+    private static void assertSame(double scopeReference, double newAngle) {
+        double expected = reference(scopeReference, newAngle);
+        double actual = CTREModuleState.placeInAppropriate0To360Scope(scopeReference, newAngle);
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual),
+            () -> "scope " + scopeReference + " angle " + newAngle + ": expected " + expected + " but was " + actual);
+    }
+
+    @Test
+    void matchesReferenceOnRandomAngles() {
+        Random random = new Random(17);
+        for (double range : new double[] {360, 3600, 36_000, 360_000}) {
+            for (int i = 0; i < casesPerRange; i++) {
+                assertSame((random.nextDouble() * 2 - 1) * range, (random.nextDouble() * 2 - 1) * range);
+            }
+        }
+    }
+
+    @Test
+    void matchesReferenceOnLargeAccumulatedAngles() {
+        Random random = new Random(18);
+        for (double range : new double[] {3.6e6, 3.6e7}) {
+            for (int i = 0; i < casesPerRange / 10; i++) {
+                double scopeReference = (random.nextDouble() * 2 - 1) * range;
+                /* A module that has turned many times against a joystick angle, and the reverse */
+                double target = random.nextDouble() * 360 - 180;
+                assertSame(scopeReference, target);
+                assertSame(target, scopeReference);
+            }
+        }
+    }
+
+    @Test
+    void matchesReferenceOnTies() {
+        Random random = new Random(19);
+        for (int i = 0; i < casesPerRange; i++) {
+            double scopeReference = (random.nextDouble() * 2 - 1) * 36_000;
+            double side = random.nextBoolean() ? 180 : -180;
+            int turns = random.nextInt(201) - 100;
+            /* Off the grid the tie is whatever the additions round to */
+            assertSame(scopeReference, scopeReference + side + 360.0 * turns);
+            /* Whole degrees, the tie is exact */
+            double whole = Math.rint(scopeReference);
+            assertSame(whole, whole + side + 360.0 * turns);
+        }
+    }
+
+    @Test
+    void matchesReferenceOnEdgeCases() {
+        double[][] cases = {
+            {0, 0}, {0, 180}, {0, -180}, {-0.0, 180}, {0, -0.0}, {-0.0, -0.0},
+            {360, -180}, {-360, 540}, {180, 0}, {-180, 0}, {360, 0}, {-360, 0},
+            {1e-300, 180}, {-1e-300, -180}, {720, 0.1}, {-720, -0.1},
+            {Math.nextDown(360.0), -180}, {Math.nextUp(-360.0), 180},
+            {0, 1e10}, {0, -1e10}, {1e10, 0}, {-1e10, 7},
+        };
+        for (double[] c : cases) {
+            assertSame(c[0], c[1]);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package frc.robot.superstructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Checks that planned moves keep their clearance from the keep-out regions. */
+class SuperstructurePlannerTest {
+    private static final int cases = 20_000;
+    private static final double margin = 0.05;
+    private static final double[] armLimits = {3.0, 4.0};
+    private static final double[] elevatorLimits = {1.5, 1.0};
+    private static final double[] jointLimits = {-0.3, 1.85, 0.0, 1.45};
+
+    /* The robot's ground and bumper regions against the joint limits, and boxes out in the open */
+    private static final KeepOutRegion[][] layouts = {
+        {
+            new KeepOutRegion("Ground", -0.3, 0.0, 0.0, 0.05),
+            new KeepOutRegion("Bumper", -0.3, -0.05, 0.2, 0.5),
+        },
+        {
+            new KeepOutRegion("Middle", 0.5, 1.0, 0.4, 0.8),
+            new KeepOutRegion("Floor", 1.2, 1.5, 0.0, 0.3),
+            new KeepOutRegion("Ceiling", 0.0, 0.3, 1.1, 1.45),
+        },
+    };
+
+    private static KeepOutRegion expand(KeepOutRegion region) {
+        return new KeepOutRegion(region.name, region.minArm - margin, region.maxArm + margin,
+            region.minElevator - margin, region.maxElevator + margin);
+    }
+
+    private static KeepOutRegion[] expandAll(KeepOutRegion[] regions) {
+        KeepOutRegion[] expanded = new KeepOutRegion[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            expanded[i] = expand(regions[i]);
+        }
+        return expanded;
+    }
+
+    /* Joint positions within the limits and outside every expanded region */
+    private static double[] randomClearPosition(Random random, KeepOutRegion[] expanded) {
+        while (true) {
+            double arm = jointLimits[0] + random.nextDouble() * (jointLimits[1] - jointLimits[0]);
+            double elevator = jointLimits[2] + random.nextDouble() * (jointLimits[3] - jointLimits[2]);
+            boolean clear = true;
+            for (KeepOutRegion region : expanded) {
+                clear &= !region.contains(arm, elevator);
+            }
+            if (clear) {
+                return new double[] {arm, elevator};
+            }
+        }
+    }
+
+    @Test
+    void planNeverEntersExpandedRegions() {
+        Random random = new Random(22);
+        for (KeepOutRegion[] regions : layouts) {
+            KeepOutRegion[] expanded = expandAll(regions);
+            SuperstructurePlanner planner = new SuperstructurePlanner(regions, armLimits, elevatorLimits, jointLimits, margin);
+            SuperstructureTrajectory.State state = new SuperstructureTrajectory.State();
+            for (int i = 0; i < cases; i++) {
+                double[] start = randomClearPosition(random, expanded);
+                double[] goal = randomClearPosition(random, expanded);
+                SuperstructureTrajectory trajectory = planner.plan(start[0], start[1], goal[0], goal[1]);
+                String move = "from " + start[0] + ", " + start[1] + " to " + goal[0] + ", " + goal[1];
+
+                int last = trajectory.getWaypointCount() - 1;
+                assertEquals(start[0], trajectory.getArmWaypoint(0), 0.0, move);
+                assertEquals(start[1], trajectory.getElevatorWaypoint(0), 0.0, move);
+                assertEquals(goal[0], trajectory.getArmWaypoint(last), 0.0, move);
+                assertEquals(goal[1], trajectory.getElevatorWaypoint(last), 0.0, move);
+                for (int w = 0; w < last; w++) {
+                    double arm = trajectory.getArmWaypoint(w + 1);
+                    double elevator = trajectory.getElevatorWaypoint(w + 1);
+                    assertTrue(arm >= jointLimits[0] && arm <= jointLimits[1], move);
+                    assertTrue(elevator >= jointLimits[2] && elevator <= jointLimits[3], move);
+                    for (KeepOutRegion region : expanded) {
+                        assertFalse(region.intersects(trajectory.getArmWaypoint(w), trajectory.getElevatorWaypoint(w), arm, elevator),
+                            move + " crosses " + region.name);
+                    }
+                }
+
+                /* The profiles follow the waypoints, so no sample reaches a region itself */
+                for (double t = 0.0; t <= trajectory.getTotalTimeSeconds(); t += 0.02) {
+                    trajectory.sample(t, state);
+                    assertTrue(planner.regionAt(state.armRadians, state.elevatorMeters) == null, move + " at " + t);
+                }
+            }
+        }
+    }
+
+    @Test
+    void clearMoveIsSingleSegment() {
+        Random random = new Random(23);
+        for (KeepOutRegion[] regions : layouts) {
+            KeepOutRegion[] expanded = expandAll(regions);
+            SuperstructurePlanner planner = new SuperstructurePlanner(regions, armLimits, elevatorLimits, jointLimits, margin);
+            int clearMoves = 0;
+            while (clearMoves < cases) {
+                double[] start = randomClearPosition(random, expanded);
+                double[] goal = randomClearPosition(random, expanded);
+                boolean clear = true;
+                for (KeepOutRegion region : expanded) {
+                    clear &= !region.intersects(start[0], start[1], goal[0], goal[1]);
+                }
+                if (!clear) {
+                    continue;
+                }
+                clearMoves++;
+                assertEquals(2, planner.plan(start[0], start[1], goal[0], goal[1]).getWaypointCount(),
+                    "from " + start[0] + ", " + start[1] + " to " + goal[0] + ", " + goal[1]);
+            }
+        }
+    }
+
+    @Test
+    void blockedMoveGoesAroundTheMargin() {
+        KeepOutRegion bumper = new KeepOutRegion("Bumper", -0.3, -0.05, 0.2, 0.5);
+        SuperstructurePlanner planner = new SuperstructurePlanner(
+            new KeepOutRegion[] {bumper}, armLimits, elevatorLimits, jointLimits, margin);
+
+        /* Straight up in front of the bumper passes within the margin, so it detours past the corners */
+        SuperstructureTrajectory trajectory = planner.plan(-0.02, 0.1, -0.02, 0.6);
+        assertEquals(4, trajectory.getWaypointCount());
+        assertEquals(bumper.maxArm + margin, trajectory.getArmWaypoint(1), 0.0);
+        assertEquals(bumper.minElevator - margin, trajectory.getElevatorWaypoint(1), 0.0);
+        assertEquals(bumper.maxArm + margin, trajectory.getArmWaypoint(2), 0.0);
+        assertEquals(bumper.maxElevator + margin, trajectory.getElevatorWaypoint(2), 0.0);
+    }
+}